@@ -26,16 +26,33 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * An object to represent the address of managed resources.
+ * An object to represent the address of managed resources. The path of a PathAddress never changes: it is backed by an
+ * array of path segments, and sub addresses and iterators are views over the same array. Path template resolvers are
+ * preferably attached through {@link #withPathTemplateResolvers(java.util.List)}, which returns a new view of the
+ * address carrying the resolvers.
  *
  * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
  * @version $Revision$
  */
 public class PathAddress implements Iterable<String>
 {
-   public static final PathAddress EMPTY_ADDRESS = new PathAddress(Collections.<String>emptyList());
+   private static final String[] NO_SEGMENTS = new String[0];
+
+   public static final PathAddress EMPTY_ADDRESS = new PathAddress(NO_SEGMENTS, 0, 0, Collections.<PathTemplateResolver>emptyList());
+
+   /**
+    * Maximum number of parsed paths kept by {@link #pathAddress(String)}. Once the cache is full, adding a path evicts
+    * an arbitrary other one. Lookups never lock, and hot paths are parsed again at worst after being evicted.
+    */
+   static final int ADDRESS_CACHE_SIZE = 1024;
+
+   private static final ConcurrentMap<String, String[]> addressCache = new ConcurrentHashMap<String, String[]>();
+   private static final AtomicInteger addressCacheSize = new AtomicInteger();
 
    /**
     * @return an empty PathAddress to be used to identify no address when looking up a resource.
@@ -53,17 +70,23 @@ public class PathAddress implements Iterable<String>
    public static PathAddress pathAddress(String... paths)
    {
       if (paths == null || paths.length == 0) return empty();
+      if (paths.length == 1) return pathAddress(paths[0]);
 
-      PathAddress address = PathAddress.empty();
+      List<String> list = new ArrayList<String>(paths.length);
       for (String path : paths)
       {
-         address = address.append(path);
+         if (path != null)
+         {
+            list.addAll(split(path, "/"));
+         }
       }
-      return address;
+
+      return create(list);
    }
 
    /**
-    * Construct a PathAddress from a path, splitting the string at each '/' character.
+    * Construct a PathAddress from a path, splitting the string at each '/' character. Parsed paths are cached, so
+    * frequently requested paths are only split once. Each call returns a new PathAddress sharing the cached segments.
     * @param addressPath path address in string format.
     * @return a PathAddress
     */
@@ -71,25 +94,64 @@ public class PathAddress implements Iterable<String>
    {
       if (addressPath == null || addressPath.length() == 0) return empty();
 
-      if (addressPath.charAt(0) == '/')
+      String[] segments = addressCache.get(addressPath);
+      if (segments == null)
       {
-         addressPath = addressPath.substring(1, addressPath.length());
+         List<String> paths = split(addressPath, "/");
+         segments = paths.toArray(new String[paths.size()]);
+         cache(addressPath, segments);
       }
 
-      return new PathAddress(split(addressPath, "/"));
+      return new PathAddress(segments, 0, segments.length, Collections.<PathTemplateResolver>emptyList());
    }
 
-   List<String> pathList;
-   private List<PathTemplateResolver> resolvers;
+   private static void cache(String addressPath, String[] segments)
+   {
+      if (addressCache.putIfAbsent(addressPath, segments) != null) return;
 
-   PathAddress(final List<String> pathList)
+      if (addressCacheSize.incrementAndGet() > ADDRESS_CACHE_SIZE)
+      {
+         Iterator<String> iterator = addressCache.keySet().iterator();
+         while (iterator.hasNext())
+         {
+            String path = iterator.next();
+            if (!path.equals(addressPath) && addressCache.remove(path) != null)
+            {
+               addressCacheSize.decrementAndGet();
+               break;
+            }
+         }
+      }
+   }
+
+   /**
+    * @return the number of parsed paths currently cached.
+    */
+   static int getCachedAddressCount()
+   {
+      return addressCache.size();
+   }
+
+   private static PathAddress create(List<String> paths)
    {
-      this(pathList, new ArrayList<PathTemplateResolver>());
+      if (paths.isEmpty()) return empty();
+
+      String[] segments = paths.toArray(new String[paths.size()]);
+      return new PathAddress(segments, 0, segments.length, Collections.<PathTemplateResolver>emptyList());
    }
 
-   PathAddress(final List<String> pathList, final List<PathTemplateResolver> resolvers)
+   final String[] segments;
+   final int offset;
+   final int length;
+   private volatile List<PathTemplateResolver> resolvers;
+   private int hash;
+   private String string;
+
+   private PathAddress(final String[] segments, final int offset, final int length, final List<PathTemplateResolver> resolvers)
    {
-      this.pathList = pathList;
+      this.segments = segments;
+      this.offset = offset;
+      this.length = length;
       this.resolvers = resolvers;
    }
 
@@ -110,11 +172,13 @@ public class PathAddress implements Iterable<String>
     */
    public PathAddress append(PathAddress address)
    {
-      List<String> list = new ArrayList<String>(pathList.size() + address.pathList.size());
-      list.addAll(pathList);
-      list.addAll(address.pathList);
+      if (address.length == 0) return this;
 
-      return new PathAddress(list, new ArrayList<PathTemplateResolver>(resolvers));
+      String[] array = new String[length + address.length];
+      System.arraycopy(segments, offset, array, 0, length);
+      System.arraycopy(address.segments, address.offset, array, length, address.length);
+
+      return new PathAddress(array, 0, array.length, resolvers);
    }
 
    /**
@@ -125,7 +189,7 @@ public class PathAddress implements Iterable<String>
     */
    public PathAddress subAddress(int start)
    {
-      return new PathAddress(pathList.subList(start, pathList.size()));
+      return subAddress(start, length);
    }
 
    /**
@@ -137,7 +201,13 @@ public class PathAddress implements Iterable<String>
     */
    public PathAddress subAddress(int start, int end)
    {
-      return new PathAddress(pathList.subList(start, end));
+      if (start < 0 || end > length || start > end)
+      {
+         throw new IndexOutOfBoundsException("start: " + start + ", end: " + end + ", size: " + length);
+      }
+      if (start == end) return new PathAddress(NO_SEGMENTS, 0, 0, Collections.<PathTemplateResolver>emptyList());
+
+      return new PathAddress(segments, offset + start, end - start, Collections.<PathTemplateResolver>emptyList());
    }
 
    /**
@@ -145,7 +215,7 @@ public class PathAddress implements Iterable<String>
     */
    public String getLastElement()
    {
-      return pathList.size() == 0 ? null : pathList.get(pathList.size() - 1);
+      return length == 0 ? null : segments[offset + length - 1];
    }
 
    /**
@@ -156,7 +226,9 @@ public class PathAddress implements Iterable<String>
     */
    public String get(int index)
    {
-      return pathList.get(index);
+      if (index < 0 || index >= length) throw new IndexOutOfBoundsException("index: " + index + ", size: " + length);
+
+      return segments[offset + index];
    }
 
    /**
@@ -175,9 +247,39 @@ public class PathAddress implements Iterable<String>
       return null;
    }
 
-   public void addPathTemplateResolver(PathTemplateResolver resolver)
+   /**
+    * Create a view of this address which resolves path templates using the given resolvers. The resolvers are
+    * consulted in list order, before any resolvers this address already carries.
+    *
+    * @param pathTemplateResolvers the resolvers to add
+    * @return new PathAddress sharing the path of this address
+    */
+   public PathAddress withPathTemplateResolvers(List<PathTemplateResolver> pathTemplateResolvers)
+   {
+      if (pathTemplateResolvers.isEmpty()) return this;
+
+      List<PathTemplateResolver> list = new ArrayList<PathTemplateResolver>(pathTemplateResolvers.size() + resolvers.size());
+      list.addAll(pathTemplateResolvers);
+      list.addAll(resolvers);
+
+      return new PathAddress(segments, offset, length, Collections.unmodifiableList(list));
+   }
+
+   /**
+    * Adds a path template resolver to this address, which is consulted before any resolvers already added.
+    *
+    * @param resolver the resolver to add
+    * @deprecated the resolvers are shared by every holder of this address, use
+    * {@link #withPathTemplateResolvers(java.util.List)} to get a view of the address carrying the resolvers instead.
+    */
+   @Deprecated
+   public synchronized void addPathTemplateResolver(PathTemplateResolver resolver)
    {
-      resolvers.add(0, resolver);
+      List<PathTemplateResolver> list = new ArrayList<PathTemplateResolver>(resolvers.size() + 1);
+      list.add(resolver);
+      list.addAll(resolvers);
+
+      resolvers = Collections.unmodifiableList(list);
    }
 
    public List<PathTemplateResolver> getPathTemplateResolvers()
@@ -212,15 +314,15 @@ public class PathAddress implements Iterable<String>
 
    public int size()
    {
-      return pathList.size();
+      return length;
    }
 
    /**
-    * @return an immutable copy of this PathAddress
+    * @return a copy of this PathAddress. The copy shares the path and the current path template resolvers of this address.
     */
    public PathAddress copy()
    {
-      return new PathAddress(new ArrayList<String>(pathList), new ArrayList<PathTemplateResolver>(resolvers));
+      return new PathAddress(segments, offset, length, resolvers);
    }
 
    @Override
@@ -230,28 +332,51 @@ public class PathAddress implements Iterable<String>
       if (o == null || getClass() != o.getClass()) return false;
 
       PathAddress that = (PathAddress) o;
+      if (length != that.length) return false;
+      if (hash != 0 && that.hash != 0 && hash != that.hash) return false;
+
+      for (int i = 0; i < length; i++)
+      {
+         if (!segments[offset + i].equals(that.segments[that.offset + i])) return false;
+      }
 
-      return pathList.equals(that.pathList);
+      return true;
    }
 
    @Override
    public int hashCode()
    {
-      return pathList.hashCode();
+      int h = hash;
+      if (h == 0)
+      {
+         h = 1;
+         for (int i = offset; i < offset + length; i++)
+         {
+            h = 31 * h + segments[i].hashCode();
+         }
+         hash = h;
+      }
+
+      return h;
    }
 
    @Override
    public String toString()
    {
-      Iterator<String> iterator = this.iterator();
-      StringBuilder sb = new StringBuilder("/");
-      while (iterator.hasNext())
+      String s = string;
+      if (s == null)
       {
-         sb.append(iterator.next());
-         if (iterator.hasNext()) sb.append("/");
+         StringBuilder sb = new StringBuilder("/");
+         for (int i = offset; i < offset + length; i++)
+         {
+            if (i > offset) sb.append("/");
+            sb.append(segments[i]);
+         }
+         s = sb.toString();
+         string = s;
       }
 
-      return sb.toString();
+      return s;
    }
 
    static List<String> split(String string, String regex)
@@ -23,6 +23,7 @@
 package org.gatein.management.api;
 
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
  * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
@@ -32,31 +33,26 @@ public class PathAddressIterator implements Iterator<String>
 {
    public static final PathAddressIterator EMPTY = new PathAddressIterator(PathAddress.EMPTY_ADDRESS);
 
-   private PathAddress originalAddress;
-   private PathAddress currentAddress;
-   private Iterator<String> iterator;
+   private final PathAddress originalAddress;
+   private int index;
 
    public PathAddressIterator(PathAddress address)
    {
       this.originalAddress = address;
-      this.currentAddress = address;
-      this.iterator = address.pathList.listIterator();
    }
 
    @Override
    public boolean hasNext()
    {
-      return iterator.hasNext();
+      return index < originalAddress.length;
    }
 
    @Override
    public String next()
    {
-      if (iterator.hasNext())
-      {
-         currentAddress = currentAddress.subAddress(1);
-      }
-      return iterator.next();
+      if (index >= originalAddress.length) throw new NoSuchElementException();
+
+      return originalAddress.segments[originalAddress.offset + index++];
    }
 
    public PathAddress originalAddress()
@@ -64,9 +60,12 @@ public class PathAddressIterator implements Iterator<String>
       return originalAddress;
    }
 
+   /**
+    * @return the remaining portion of the address, which is a view of the original address.
+    */
    public PathAddress currentAddress()
    {
-      return currentAddress;
+      return (index == 0) ? originalAddress : originalAddress.subAddress(index);
    }
 
    @Override
@@ -143,62 +143,115 @@ public abstract class PathTemplateFilter
    private static class SimpleFilter extends PathTemplateFilter
    {
       private final List<Expression> expressions;
+      private final String[] templateNames;
+      private final List<ExpressionGroup> groups;
 
       public SimpleFilter(List<Expression> expressions)
       {
          this.expressions = expressions;
+
+         // Compile consecutive expressions of the same path template and filter type into groups, and index the
+         // path templates so each of them is resolved only once per address.
+         List<String> names = new ArrayList<String>();
+         List<ExpressionGroup> groups = new ArrayList<ExpressionGroup>();
+         ExpressionGroup group = null;
+         for (Expression expression : expressions)
+         {
+            if (group == null || !group.accepts(expression))
+            {
+               int template = -1;
+               if (expression.templateName != null)
+               {
+                  template = names.indexOf(expression.templateName);
+                  if (template == -1)
+                  {
+                     template = names.size();
+                     names.add(expression.templateName);
+                  }
+               }
+               group = new ExpressionGroup(expression.templateName, template, expression.filterType);
+               groups.add(group);
+            }
+            group.add(expression.value);
+         }
+
+         this.templateNames = names.toArray(new String[names.size()]);
+         this.groups = groups;
       }
 
       @Override
       FilteredAddress filter(final PathAddress address)
       {
+         String[] resolved = new String[templateNames.length];
+         boolean filtered = false;
+         for (int i = 0; i < templateNames.length; i++)
+         {
+            resolved[i] = address.resolvePathTemplate(templateNames[i]);
+            if (resolved[i] != null) filtered = true;
+         }
+
+         final boolean isFiltered = filtered;
+         final boolean matches = matches(address, resolved);
          return new FilteredAddress()
          {
             @Override
             public boolean isFiltered()
             {
-               for (Expression expression : expressions)
-               {
-                  boolean filtered = expression.resolves(address);
-                  if (filtered) return true;
-               }
-
-               return false;
+               return isFiltered;
             }
 
             @Override
             public boolean matches()
             {
-               //TODO: Clean this logic up.
-               boolean overall = true;
-               Set<String> matchedTemplates = new HashSet<String>();
-               for (Expression expression : expressions)
-               {
-                  if (matchedTemplates.contains(expression.templateName)) continue;
+               return matches;
+            }
+         };
+      }
 
-                  boolean match = expression.match(address);
-                  if (match && expression.filterType == FilterType.exclusion && expression.resolves(address))
-                  {
-                     return false;
-                  }
-                  else if (expression.filterType == FilterType.exclusion)
-                  {
-                     overall = true;
-                  }
-                  else if (match && expression.resolves(address))
-                  {
-                     matchedTemplates.add(expression.templateName);
-                     overall = true;
-                  }
-                  else
-                  {
-                     overall = overall && match;
-                  }
+      private boolean matches(PathAddress address, String[] resolved)
+      {
+         boolean overall = true;
+         boolean[] matchedTemplates = new boolean[templateNames.length];
+         for (ExpressionGroup group : groups)
+         {
+            if (group.template == -1)
+            {
+               // Without a path template the value is compared to the whole address, which never counts as resolved.
+               if (group.filterType == FilterType.exclusion)
+               {
+                  overall = true;
+               }
+               else
+               {
+                  overall = overall && group.matchesPath(address.toString());
                }
+               continue;
+            }
+
+            if (matchedTemplates[group.template]) continue;
+
+            String value = resolved[group.template];
+            if (group.filterType == FilterType.exclusion)
+            {
+               if (value != null && group.matches(value)) return false;
 
-               return overall;
+               overall = true;
             }
-         };
+            else if (value != null)
+            {
+               if (group.matches(value))
+               {
+                  matchedTemplates[group.template] = true;
+                  overall = true;
+               }
+               else
+               {
+                  overall = false;
+               }
+            }
+         }
+
+         return overall;
       }
 
       @Override
@@ -418,34 +471,6 @@ public abstract class PathTemplateFilter
          this.filterType = filterType;
       }
 
-      public boolean match(PathAddress address)
-      {
-         if (value.equals("*")) return true;
-
-         if (templateName == null)
-         {
-            String path = value;
-            if (path.charAt(0) != '/') path = "/" + path;
-
-            return path.equals(address.toString());
-         }
-         else
-         {
-            String resolved = address.resolvePathTemplate(templateName);
-            if (resolved == null) return true; // we match because no path template matches
-
-            String path = value;
-            if (value.charAt(0) == '/') path = value.substring(1); // strip the leading slash because path template's don't match leading slashes
-
-            return resolved.equals(path);
-         }
-      }
-
-      public boolean resolves(PathAddress address)
-      {
-         return address.resolvePathTemplate(templateName) != null;
-      }
-
       @Override
       public boolean equals(Object o)
       {
@@ -481,6 +506,60 @@ public abstract class PathTemplateFilter
       }
    }
 
+   /**
+    * Consecutive expressions sharing the same path template and filter type, with their values in a hash set.
+    */
+   private static class ExpressionGroup
+   {
+      private final String templateName;
+      private final int template;
+      private final FilterType filterType;
+      private final Set<String> values;
+      private boolean wildcard;
+
+      private ExpressionGroup(String templateName, int template, FilterType filterType)
+      {
+         this.templateName = templateName;
+         this.template = template;
+         this.filterType = filterType;
+         this.values = new HashSet<String>();
+      }
+
+      private boolean accepts(Expression expression)
+      {
+         return filterType == expression.filterType &&
+            (templateName == null ? expression.templateName == null : templateName.equals(expression.templateName));
+      }
+
+      private void add(String value)
+      {
+         if (value.equals(WILDCARD))
+         {
+            wildcard = true;
+         }
+         else if (templateName == null)
+         {
+            values.add(value.startsWith("/") ? value : "/" + value);
+         }
+         else
+         {
+            // strip the leading slash because path template's don't match leading slashes
+            values.add(value.startsWith("/") ? value.substring(1) : value);
+         }
+      }
+
+      private boolean matches(String resolved)
+      {
+         return wildcard || values.contains(resolved);
+      }
+
+      private boolean matchesPath(String path)
+      {
+         // every value has to match the path
+         return values.isEmpty() || (values.size() == 1 && values.contains(path));
+      }
+   }
+
    public static enum FilterType
    {
       inclusion, exclusion
@@ -0,0 +1,64 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.api.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Can be used on a managed type to indicate how instances are shared between requests when the instance is created by
+ * the management framework, i.e. it is not a runtime component and is not returned by a parent managed resource.
+ *
+ * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface ManagedScope
+{
+   /**
+    * The scope of instances of the managed type.
+    *
+    * @return the scope
+    */
+   Scope value() default Scope.REQUEST;
+
+   public static enum Scope
+   {
+      /**
+       * One instance is created and shared by all requests. The instance must be thread safe.
+       */
+      SINGLETON,
+
+      /**
+       * A new instance is created for every request.
+       */
+      REQUEST,
+
+      /**
+       * Instances are reused between requests, but are never used by more than one request at a time.
+       */
+      POOLED
+   }
+}
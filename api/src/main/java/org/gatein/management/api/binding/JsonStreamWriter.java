@@ -0,0 +1,362 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.api.binding;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A forward only JSON writer which encodes the document as UTF-8 directly to an output stream through a
+ * {@link Utf8Writer}, optionally indenting it as it is written. Unlike building the document in memory first, the size of the document does not matter, and it is
+ * written in a single pass.
+ *
+ * <p>Calls are chained the same way as a <code>org.json.JSONWriter</code>, for example
+ * <code>writer.objectStart().key("name").value("foo").objectEnd()</code>. The writer is not thread safe.</p>
+ *
+ * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
+ * @version $Revision$
+ */
+public class JsonStreamWriter
+{
+   private static final char[] HEX = "0123456789abcdef".toCharArray();
+   private static final String TRUE = "true";
+   private static final String FALSE = "false";
+   private static final String NULL = "null";
+
+   private final OutputStream out;
+   private final Utf8Writer writer;
+   private final int indent;
+
+   // For each open object or array, whether it has any members yet. Objects are also tracked to validate keys.
+   private boolean[] empty = new boolean[16];
+   private boolean[] object = new boolean[16];
+   private int depth;
+   private boolean keyWritten;
+
+   /**
+    * @param out the stream to write to
+    * @param pretty true to indent the document with 3 spaces per level, the same as <code>JSONObject.toString(3)</code>
+    */
+   public JsonStreamWriter(OutputStream out, boolean pretty)
+   {
+      this(out, pretty ? 3 : 0);
+   }
+
+   /**
+    * @param out the stream to write to
+    * @param indent the number of spaces to indent each level with, or 0 to write the document on a single line
+    */
+   public JsonStreamWriter(OutputStream out, int indent)
+   {
+      if (out == null) throw new IllegalArgumentException("out is null");
+      if (indent < 0) throw new IllegalArgumentException("indent cannot be negative");
+
+      this.out = out;
+      this.writer = new Utf8Writer(out);
+      this.indent = indent;
+   }
+
+   public JsonStreamWriter objectStart() throws IOException
+   {
+      beforeValue();
+      push(true);
+      write('{');
+      return this;
+   }
+
+   public JsonStreamWriter objectEnd() throws IOException
+   {
+      if (depth == 0 || !object[depth - 1] || keyWritten) throw new IllegalStateException("No object to end");
+
+      pop('}');
+      return this;
+   }
+
+   public JsonStreamWriter arrayStart() throws IOException
+   {
+      beforeValue();
+      push(false);
+      write('[');
+      return this;
+   }
+
+   public JsonStreamWriter arrayEnd() throws IOException
+   {
+      if (depth == 0 || object[depth - 1]) throw new IllegalStateException("No array to end");
+
+      pop(']');
+      return this;
+   }
+
+   public JsonStreamWriter key(String key) throws IOException
+   {
+      if (key == null) throw new IllegalArgumentException("key is null");
+      if (depth == 0 || !object[depth - 1] || keyWritten) throw new IllegalStateException("Key '" + key + "' is not allowed here");
+
+      nextMember();
+      writeString(key);
+      write(':');
+      if (indent > 0)
+      {
+         write(' ');
+      }
+      keyWritten = true;
+      return this;
+   }
+
+   /**
+    * Writes a string value, or <code>null</code> if the value is null.
+    */
+   public JsonStreamWriter value(String value) throws IOException
+   {
+      beforeValue();
+      if (value == null)
+      {
+         writer.write(NULL);
+      }
+      else
+      {
+         writeString(value);
+      }
+      return this;
+   }
+
+   public JsonStreamWriter value(boolean value) throws IOException
+   {
+      beforeValue();
+      writer.write(value ? TRUE : FALSE);
+      return this;
+   }
+
+   public JsonStreamWriter value(long value) throws IOException
+   {
+      beforeValue();
+      writer.write(Long.toString(value));
+      return this;
+   }
+
+   /**
+    * Writes a number value, or <code>null</code> if the value is null.
+    *
+    * @throws IllegalArgumentException if the value is not a finite number
+    */
+   public JsonStreamWriter value(Number value) throws IOException
+   {
+      if (value instanceof Double || value instanceof Float)
+      {
+         double d = value.doubleValue();
+         if (Double.isNaN(d) || Double.isInfinite(d)) throw new IllegalArgumentException("JSON does not allow non-finite number " + value);
+      }
+
+      beforeValue();
+      if (value == null)
+      {
+         writer.write(NULL);
+      }
+      else
+      {
+         writer.write(value.toString());
+      }
+      return this;
+   }
+
+   public JsonStreamWriter nullValue() throws IOException
+   {
+      beforeValue();
+      writer.write(NULL);
+      return this;
+   }
+
+   /**
+    * Writes any buffered bytes and flushes the underlying stream.
+    */
+   public void flush() throws IOException
+   {
+      writer.flush();
+   }
+
+   /**
+    * Flushes and closes the underlying stream.
+    */
+   public void close() throws IOException
+   {
+      try
+      {
+         writer.close();
+      }
+      finally
+      {
+         out.close();
+      }
+   }
+
+   private void beforeValue() throws IOException
+   {
+      if (depth > 0)
+      {
+         if (object[depth - 1])
+         {
+            if (!keyWritten) throw new IllegalStateException("A key must be written before a value in an object");
+            keyWritten = false;
+         }
+         else
+         {
+            nextMember();
+         }
+      }
+   }
+
+   private void nextMember() throws IOException
+   {
+      if (empty[depth - 1])
+      {
+         empty[depth - 1] = false;
+      }
+      else
+      {
+         write(',');
+      }
+      newLine(depth);
+   }
+
+   private void push(boolean isObject)
+   {
+      if (depth == empty.length)
+      {
+         boolean[] newEmpty = new boolean[depth * 2];
+         System.arraycopy(empty, 0, newEmpty, 0, depth);
+         empty = newEmpty;
+         boolean[] newObject = new boolean[depth * 2];
+         System.arraycopy(object, 0, newObject, 0, depth);
+         object = newObject;
+      }
+      empty[depth] = true;
+      object[depth] = isObject;
+      depth++;
+   }
+
+   private void pop(char c) throws IOException
+   {
+      depth--;
+      if (!empty[depth])
+      {
+         newLine(depth);
+      }
+      write(c);
+   }
+
+   private void newLine(int level) throws IOException
+   {
+      if (indent == 0) return;
+
+      write('\n');
+      for (int i = level * indent; i > 0; i--)
+      {
+         write(' ');
+      }
+   }
+
+   private void writeString(String s) throws IOException
+   {
+      write('"');
+      for (int i = 0, length = s.length(); i < length; i++)
+      {
+         char c = s.charAt(i);
+         if (c < 0x80)
+         {
+            switch (c)
+            {
+               case '"':
+               case '\\':
+                  write('\\');
+                  write(c);
+                  break;
+               case '\b':
+                  write('\\');
+                  write('b');
+                  break;
+               case '\f':
+                  write('\\');
+                  write('f');
+                  break;
+               case '\n':
+                  write('\\');
+                  write('n');
+                  break;
+               case '\r':
+                  write('\\');
+                  write('r');
+                  break;
+               case '\t':
+                  write('\\');
+                  write('t');
+                  break;
+               default:
+                  if (c < 0x20)
+                  {
+                     writeUnicodeEscape(c);
+                  }
+                  else
+                  {
+                     write(c);
+                  }
+            }
+         }
+         else if (c == '\u2028' || c == '\u2029')
+         {
+            // Valid JSON, but not valid in javascript string literals
+            writeUnicodeEscape(c);
+         }
+         else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1)))
+         {
+            write(c);
+            write(s.charAt(++i));
+         }
+         else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE)
+         {
+            // Unpaired surrogate, which cannot be encoded as UTF-8
+            writeUnicodeEscape(c);
+         }
+         else
+         {
+            write(c);
+         }
+      }
+      write('"');
+   }
+
+   private void writeUnicodeEscape(char c) throws IOException
+   {
+      write('\\');
+      write('u');
+      write(HEX[(c >> 12) & 0xF]);
+      write(HEX[(c >> 8) & 0xF]);
+      write(HEX[(c >> 4) & 0xF]);
+      write(HEX[c & 0xF]);
+   }
+
+   private void write(char c) throws IOException
+   {
+      writer.write(c);
+   }
+}
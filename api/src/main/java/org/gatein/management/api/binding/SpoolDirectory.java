@@ -0,0 +1,375 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.api.binding;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A directory holding temporary files for data which cannot be streamed directly, for example because its length has
+ * to be known before it can be sent. The total size of the files in the directory is limited by a quota, and files are
+ * removed as soon as they are closed.
+ * <p/>
+ * The same directory can be shared by several spool directories, even across processes. Each of them keeps its files in
+ * its own sub directory, holding a lock on a file of the sub directory for as long as the process runs. Sub directories
+ * whose lock is no longer held were left behind by a process which did not shut down cleanly, and are removed when
+ * the first file is created.
+ *
+ * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
+ * @version $Revision$
+ */
+public class SpoolDirectory
+{
+   /**
+    * System property for the location of the default spool directory, defaults to a directory in java.io.tmpdir.
+    */
+   public static final String DIRECTORY_PROPERTY = "gatein.management.spool.dir";
+
+   /**
+    * System property for the quota in bytes of the default spool directory, defaults to no quota.
+    */
+   public static final String QUOTA_PROPERTY = "gatein.management.spool.quota";
+
+   public static final long NO_QUOTA = -1;
+
+   private static final String FILE_PREFIX = "spool-";
+
+   private static final String DIRECTORY_SUFFIX = ".dir";
+
+   private static final String LOCK_FILE = ".lock";
+
+   private static volatile SpoolDirectory defaultDirectory;
+
+   /**
+    * @return the spool directory configured through the {@value #DIRECTORY_PROPERTY} and {@value #QUOTA_PROPERTY}
+    * system properties.
+    */
+   public static SpoolDirectory getDefault()
+   {
+      SpoolDirectory directory = defaultDirectory;
+      if (directory == null)
+      {
+         synchronized (SpoolDirectory.class)
+         {
+            directory = defaultDirectory;
+            if (directory == null)
+            {
+               String path = System.getProperty(DIRECTORY_PROPERTY);
+               File file = (path == null) ? new File(System.getProperty("java.io.tmpdir"), "gatein-management-spool") : new File(path);
+
+               long quota = NO_QUOTA;
+               String quotaValue = System.getProperty(QUOTA_PROPERTY);
+               if (quotaValue != null)
+               {
+                  try
+                  {
+                     quota = Long.parseLong(quotaValue.trim());
+                  }
+                  catch (NumberFormatException e)
+                  {
+                     throw new IllegalStateException("Invalid value '" + quotaValue + "' for system property " + QUOTA_PROPERTY, e);
+                  }
+               }
+
+               directory = new SpoolDirectory(file, quota);
+               defaultDirectory = directory;
+            }
+         }
+      }
+
+      return directory;
+   }
+
+   private final File directory;
+   private final long quota;
+   private final AtomicLong usage = new AtomicLong();
+   private File instanceDirectory;
+   private FileLock lock; // keeps the lock file open for as long as this directory is in use
+
+   /**
+    * @param directory the directory to create files in, which is created if it does not exist
+    * @param quota the maximum number of bytes all files of the directory may hold together, or {@link #NO_QUOTA}
+    */
+   public SpoolDirectory(File directory, long quota)
+   {
+      if (directory == null) throw new IllegalArgumentException("directory is null");
+      if (quota < 0 && quota != NO_QUOTA) throw new IllegalArgumentException("quota cannot be negative");
+
+      this.directory = directory;
+      this.quota = quota;
+   }
+
+   public File getDirectory()
+   {
+      return directory;
+   }
+
+   /**
+    * @return the number of bytes currently held by the files of this directory.
+    */
+   public long getUsage()
+   {
+      return usage.get();
+   }
+
+   /**
+    * Creates a new file in this directory. The file must be closed once it is no longer needed.
+    *
+    * @param suffix the suffix of the file name, for example ".zip"
+    * @return the new spool file
+    * @throws IOException if the file could not be created
+    */
+   public SpoolFile createFile(String suffix) throws IOException
+   {
+      File file = File.createTempFile(FILE_PREFIX, suffix, getInstanceDirectory());
+
+      return new SpoolFile(file);
+   }
+
+   private synchronized File getInstanceDirectory() throws IOException
+   {
+      if (instanceDirectory != null) return instanceDirectory;
+
+      if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory())
+      {
+         throw new IOException("Could not create spool directory " + directory);
+      }
+
+      deleteOrphans();
+
+      for (int i = 0; i < 10; i++)
+      {
+         File dir = File.createTempFile(FILE_PREFIX, DIRECTORY_SUFFIX, directory);
+         if (!dir.delete() || !dir.mkdir()) continue;
+
+         File lockFile = new File(dir, LOCK_FILE);
+         FileChannel channel;
+         try
+         {
+            channel = new RandomAccessFile(lockFile, "rw").getChannel();
+         }
+         catch (FileNotFoundException e)
+         {
+            continue;
+         }
+         FileLock fileLock = channel.tryLock();
+
+         // Another process may have taken the new directory for an orphan before it was locked
+         if (fileLock != null && lockFile.isFile())
+         {
+            lock = fileLock;
+            instanceDirectory = dir;
+            return dir;
+         }
+
+         channel.close();
+      }
+
+      throw new IOException("Could not create spool directory in " + directory);
+   }
+
+   /**
+    * Deletes the sub directories whose lock file is not locked by any process.
+    */
+   private void deleteOrphans()
+   {
+      File[] dirs = directory.listFiles();
+      if (dirs == null) return;
+
+      for (File dir : dirs)
+      {
+         String name = dir.getName();
+         if (!dir.isDirectory() || !name.startsWith(FILE_PREFIX) || !name.endsWith(DIRECTORY_SUFFIX)) continue;
+
+         File lockFile = new File(dir, LOCK_FILE);
+         if (!lockFile.isFile()) continue;
+
+         boolean orphan = false;
+         try
+         {
+            RandomAccessFile file = new RandomAccessFile(lockFile, "rw");
+            try
+            {
+               FileLock fileLock = file.getChannel().tryLock();
+               if (fileLock != null)
+               {
+                  orphan = true;
+                  File[] files = dir.listFiles();
+                  if (files != null)
+                  {
+                     for (File f : files)
+                     {
+                        if (!f.equals(lockFile)) f.delete();
+                     }
+                  }
+                  fileLock.release();
+               }
+            }
+            catch (OverlappingFileLockException e)
+            {
+               // Locked by another spool directory of this process
+            }
+            finally
+            {
+               file.close();
+            }
+         }
+         catch (IOException ignore)
+         {
+         }
+
+         if (orphan)
+         {
+            lockFile.delete();
+            dir.delete();
+         }
+      }
+   }
+
+   private void reserve(long bytes) throws IOException
+   {
+      long used = usage.addAndGet(bytes);
+      if (quota != NO_QUOTA && used > quota)
+      {
+         usage.addAndGet(-bytes);
+         throw new IOException("Spool directory " + directory + " exceeded its quota of " + quota + " bytes.");
+      }
+   }
+
+   /**
+    * A file of a spool directory. Data is written through {@link #getOutputStream()}, and can be read as many times as
+    * needed once the output stream has been closed. Closing the file deletes it.
+    */
+   public final class SpoolFile
+   {
+      private final File file;
+      private long length;
+      private OutputStream outputStream;
+      private boolean closed;
+
+      private SpoolFile(File file)
+      {
+         this.file = file;
+      }
+
+      public File getFile()
+      {
+         return file;
+      }
+
+      /**
+       * @return the number of bytes written to the file.
+       */
+      public synchronized long length()
+      {
+         return length;
+      }
+
+      /**
+       * @return the stream to write the content of the file to. Writing fails with an IOException once the quota of the
+       * spool directory is exceeded.
+       * @throws IOException if the file cannot be opened
+       */
+      public synchronized OutputStream getOutputStream() throws IOException
+      {
+         if (closed) throw new IOException("Spool file " + file + " is closed.");
+         if (outputStream == null)
+         {
+            outputStream = new FilterOutputStream(new FileOutputStream(file))
+            {
+               @Override
+               public void write(int b) throws IOException
+               {
+                  written(1);
+                  out.write(b);
+               }
+
+               @Override
+               public void write(byte[] b, int off, int len) throws IOException
+               {
+                  written(len);
+                  out.write(b, off, len);
+               }
+            };
+         }
+
+         return outputStream;
+      }
+
+      /**
+       * @return a new stream reading the content of the file.
+       * @throws IOException if the file cannot be opened
+       */
+      public InputStream getInputStream() throws IOException
+      {
+         synchronized (this)
+         {
+            if (closed) throw new IOException("Spool file " + file + " is closed.");
+         }
+
+         return new BufferedInputStream(new FileInputStream(file));
+      }
+
+      /**
+       * Deletes the file and releases the space it held in the spool directory.
+       */
+      public synchronized void close()
+      {
+         if (closed) return;
+
+         closed = true;
+         if (outputStream != null)
+         {
+            try
+            {
+               outputStream.close();
+            }
+            catch (IOException ignore)
+            {
+            }
+         }
+         file.delete();
+         usage.addAndGet(-length);
+      }
+
+      private synchronized void written(int bytes) throws IOException
+      {
+         if (closed) throw new IOException("Spool file " + file + " is closed.");
+
+         reserve(bytes);
+         length += bytes;
+      }
+   }
+}
@@ -0,0 +1,212 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.api.binding;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A buffered writer which encodes characters as UTF-8 straight into an output stream. The byte buffer is borrowed from
+ * a small shared pool and returned when the writer is closed, so writing a model to a stream does not allocate a new
+ * encoder and buffers every time. Closing the writer flushes it, but does not close the underlying stream.
+ * <p/>
+ * Surrogate pairs are encoded as a single code point, even when the two halves are written separately. An unpaired
+ * surrogate cannot be encoded and is replaced by '?', the same way the platform encoder does. Writers needing another
+ * replacement, like {@link JsonStreamWriter} which escapes them, have to handle unpaired surrogates before writing.
+ *
+ * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
+ * @version $Revision$
+ */
+public class Utf8Writer extends Writer
+{
+   private static final int BUFFER_SIZE = 8192;
+   private static final int MAX_POOLED_BUFFERS = 16;
+
+   private static final ConcurrentLinkedQueue<byte[]> buffers = new ConcurrentLinkedQueue<byte[]>();
+   private static final AtomicInteger pooled = new AtomicInteger();
+
+   private final OutputStream out;
+   private byte[] buffer;
+   private int position;
+   private char highSurrogate;
+
+   /**
+    * @param out the stream to write the encoded characters to
+    */
+   public Utf8Writer(OutputStream out)
+   {
+      this.out = out;
+      this.buffer = acquire();
+   }
+
+   @Override
+   public void write(int c) throws IOException
+   {
+      ensureOpen();
+      encode((char) c);
+   }
+
+   @Override
+   public void write(char[] cbuf, int off, int len) throws IOException
+   {
+      ensureOpen();
+      for (int i = off, end = off + len; i < end; i++)
+      {
+         encode(cbuf[i]);
+      }
+   }
+
+   @Override
+   public void write(String str, int off, int len) throws IOException
+   {
+      ensureOpen();
+      for (int i = off, end = off + len; i < end; i++)
+      {
+         encode(str.charAt(i));
+      }
+   }
+
+   @Override
+   public void flush() throws IOException
+   {
+      ensureOpen();
+      flushBuffer();
+      out.flush();
+   }
+
+   @Override
+   public void close() throws IOException
+   {
+      if (buffer == null) return;
+
+      try
+      {
+         if (highSurrogate != 0)
+         {
+            highSurrogate = 0;
+            writeByte('?');
+         }
+         flush();
+      }
+      finally
+      {
+         release(buffer);
+         buffer = null;
+      }
+   }
+
+   private void encode(char c) throws IOException
+   {
+      if (highSurrogate != 0)
+      {
+         char high = highSurrogate;
+         highSurrogate = 0;
+         if (Character.isLowSurrogate(c))
+         {
+            int cp = Character.toCodePoint(high, c);
+            writeByte(0xF0 | (cp >> 18));
+            writeByte(0x80 | ((cp >> 12) & 0x3F));
+            writeByte(0x80 | ((cp >> 6) & 0x3F));
+            writeByte(0x80 | (cp & 0x3F));
+            return;
+         }
+
+         // Unpaired surrogate, replaced the same way the platform encoder does
+         writeByte('?');
+      }
+
+      if (c < 0x80)
+      {
+         writeByte(c);
+      }
+      else if (c < 0x800)
+      {
+         writeByte(0xC0 | (c >> 6));
+         writeByte(0x80 | (c & 0x3F));
+      }
+      else if (Character.isHighSurrogate(c))
+      {
+         highSurrogate = c;
+      }
+      else if (Character.isLowSurrogate(c))
+      {
+         writeByte('?');
+      }
+      else
+      {
+         writeByte(0xE0 | (c >> 12));
+         writeByte(0x80 | ((c >> 6) & 0x3F));
+         writeByte(0x80 | (c & 0x3F));
+      }
+   }
+
+   private void writeByte(int b) throws IOException
+   {
+      if (position == buffer.length)
+      {
+         flushBuffer();
+      }
+      buffer[position++] = (byte) b;
+   }
+
+   private void flushBuffer() throws IOException
+   {
+      if (position > 0)
+      {
+         out.write(buffer, 0, position);
+         position = 0;
+      }
+   }
+
+   private void ensureOpen() throws IOException
+   {
+      if (buffer == null) throw new IOException("Writer is closed");
+   }
+
+   private static byte[] acquire()
+   {
+      byte[] buffer = buffers.poll();
+      if (buffer == null)
+      {
+         return new byte[BUFFER_SIZE];
+      }
+
+      pooled.decrementAndGet();
+      return buffer;
+   }
+
+   private static void release(byte[] buffer)
+   {
+      if (pooled.incrementAndGet() <= MAX_POOLED_BUFFERS)
+      {
+         buffers.offer(buffer);
+      }
+      else
+      {
+         pooled.decrementAndGet();
+      }
+   }
+}
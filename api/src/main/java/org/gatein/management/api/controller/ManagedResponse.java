@@ -26,6 +26,14 @@ import java.io.IOException;
 import java.io.OutputStream;
 
 /**
+ * The response of a {@link ManagementController} request.
+ * <p/>
+ * A response may hold on to resources until its result is written, for example an export streamed while it is
+ * written keeps the extensions it exports from loaded. Such responses implement {@link java.io.Closeable}, and
+ * {@link #writeResult(java.io.OutputStream, boolean)} releases the resources once the result is written. A caller which
+ * may not write the result, because it only looks at the outcome or fails before writing, must close the response.
+ * Closing a response which has already been written or closed has no effect.
+ *
  * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
  * @version $Revision$
  */
@@ -46,7 +54,8 @@ public interface ManagedResponse
 
    /**
     * Will write the result to the outputStream.  This will use the {@link org.gatein.management.api.binding.BindingProvider}
-    * registered for an extension.
+    * registered for an extension. Resources held by the response are released once the result is written, whether or
+    * not writing succeeds.
     *
     * @param outputStream the stream to write the result to.
     * @param pretty true if the result should be formatted pretty, including new lines and spaces.
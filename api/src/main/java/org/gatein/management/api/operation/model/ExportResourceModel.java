@@ -22,17 +22,26 @@
 
 package org.gatein.management.api.operation.model;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 
 /**
+ * The result of an export operation. The tasks are either given up front, or pulled one at a time from an iterator
+ * while the export is being written, in which case tasks can be produced (and released) as the export goes, and the
+ * model can only be iterated once.
+ *
  * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
  * @version $Revision$
  */
-public class ExportResourceModel
+public class ExportResourceModel implements Iterable<ExportTask>
 {
    private List<ExportTask> tasks;
+   private Iterator<ExportTask> source;
+   private boolean consumed;
+   private Integer compressionLevel;
 
    public ExportResourceModel(ExportTask...tasks)
    {
@@ -45,13 +54,89 @@ public class ExportResourceModel
       this.tasks = tasks;
    }
 
+   /**
+    * Creates a model whose tasks are pulled from the iterator while the export is being written.
+    *
+    * @param tasks iterator producing the tasks of the export
+    */
+   public ExportResourceModel(Iterator<ExportTask> tasks)
+   {
+      if (tasks == null) throw new IllegalArgumentException("tasks is null");
+      this.source = tasks;
+   }
+
+   /**
+    * @return true if the tasks of the export are produced while the model is iterated, in which case producing them may
+    * still fail, and may need the resources which created the model.
+    */
+   public boolean isLazy()
+   {
+      return source != null;
+   }
+
+   /**
+    * @return all tasks of the export. For a model created from an iterator, this produces all remaining tasks.
+    */
    public List<ExportTask> getTasks()
    {
+      materialize();
       return Collections.unmodifiableList(tasks);
    }
 
    public void addTask(ExportTask task)
    {
+      materialize();
       tasks.add(task);
    }
+
+   /**
+    * @return the deflate compression level of the export archive, or null to use the level the archive is configured
+    * with.
+    */
+   public Integer getCompressionLevel()
+   {
+      return compressionLevel;
+   }
+
+   /**
+    * @param compressionLevel the deflate compression level of the export archive, from 0 (entries are stored
+    * uncompressed) to 9, -1 for the default level, or null to use the level the archive is configured with.
+    */
+   public void setCompressionLevel(Integer compressionLevel)
+   {
+      this.compressionLevel = compressionLevel;
+   }
+
+   /**
+    * @return iterator over the tasks of the export. For a model created from an iterator, this returns the iterator
+    * itself and can only be called once.
+    */
+   @Override
+   public Iterator<ExportTask> iterator()
+   {
+      if (source != null)
+      {
+         Iterator<ExportTask> iterator = source;
+         source = null;
+         consumed = true;
+         return iterator;
+      }
+      if (consumed) throw new IllegalStateException("The tasks of this export have already been iterated.");
+
+      return Collections.unmodifiableList(tasks).iterator();
+   }
+
+   private void materialize()
+   {
+      if (consumed) throw new IllegalStateException("The tasks of this export have already been iterated.");
+      if (source != null)
+      {
+         tasks = new ArrayList<ExportTask>();
+         while (source.hasNext())
+         {
+            tasks.add(source.next());
+         }
+         source = null;
+      }
+   }
 }
@@ -0,0 +1,137 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.api.operation.model;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.regex.Pattern;
+
+/**
+ * The data of an import operation. Operation handlers register a task for the entries they import, then call
+ * {@link #importEntries()}, which reads the entries one at a time and passes each entry to the first task matching it.
+ * <p>
+ * Handlers needing random access, for example to read a manifest before importing anything, can list the entries and
+ * read any of them, and can import entries concurrently. The import is then spooled to a temporary file first, which
+ * is removed once the entries are imported, or the model is closed. Models unmarshalled through the binding provider
+ * of an operation context are closed by the management controller once the operation handler has completed.
+ *
+ * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
+ * @version $Revision$
+ */
+public abstract class ImportResourceModel
+{
+   private final List<ImportTask> tasks = new ArrayList<ImportTask>();
+   private final List<Pattern> patterns = new ArrayList<Pattern>();
+
+   public List<ImportTask> getTasks()
+   {
+      return Collections.unmodifiableList(tasks);
+   }
+
+   public void addTask(ImportTask task)
+   {
+      patterns.add(compile(task.getEntry()));
+      tasks.add(task);
+   }
+
+   /**
+    * Imports the entries. Entries can only be imported once.
+    *
+    * @return the entries no task matched, which were skipped.
+    * @throws IOException if an entry could not be read or imported.
+    */
+   public abstract List<String> importEntries() throws IOException;
+
+   /**
+    * Imports the entries concurrently, so the tasks must be thread safe. Entries can only be imported once.
+    *
+    * @param executor the executor to import the entries with
+    * @return the entries no task matched, which were skipped.
+    * @throws IOException if an entry could not be read or imported.
+    */
+   public abstract List<String> importEntries(ExecutorService executor) throws IOException;
+
+   /**
+    * @return the names of all entries of the import.
+    * @throws IOException if the import could not be read.
+    */
+   public abstract List<String> getEntries() throws IOException;
+
+   /**
+    * @param entry the name of the entry
+    * @return a new stream reading the entry, or null if there is no such entry. The stream must be closed.
+    * @throws IOException if the import could not be read.
+    */
+   public abstract InputStream getInputStream(String entry) throws IOException;
+
+   /**
+    * Releases the resources held by the import, without importing the entries.
+    */
+   public abstract void close();
+
+   /**
+    * @param entry the entry to import
+    * @return the first task matching the entry, or null if no task matches.
+    */
+   protected ImportTask getTask(String entry)
+   {
+      for (int i = 0; i < tasks.size(); i++)
+      {
+         if (patterns.get(i).matcher(entry).matches()) return tasks.get(i);
+      }
+
+      return null;
+   }
+
+   private static Pattern compile(String entry)
+   {
+      if (entry == null) throw new IllegalArgumentException("Entry pattern of import task cannot be null.");
+
+      StringBuilder regex = new StringBuilder();
+      int start = 0;
+      for (int i = 0; i < entry.length(); i++)
+      {
+         if (entry.charAt(i) == '*')
+         {
+            if (i > start) regex.append(Pattern.quote(entry.substring(start, i)));
+            if (i + 1 < entry.length() && entry.charAt(i + 1) == '*')
+            {
+               regex.append(".*");
+               i++;
+            }
+            else
+            {
+               regex.append("[^/]*");
+            }
+            start = i + 1;
+         }
+      }
+      if (start < entry.length()) regex.append(Pattern.quote(entry.substring(start)));
+
+      return Pattern.compile(regex.toString());
+   }
+}
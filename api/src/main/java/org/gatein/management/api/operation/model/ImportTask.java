@@ -0,0 +1,51 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.api.operation.model;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Imports the entries of an import matching {@link #getEntry()}.
+ *
+ * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
+ * @version $Revision$
+ */
+public interface ImportTask
+{
+   /**
+    * @return the pattern of the entries imported by this task, for example <tt>portal/&#42;/pages.xml</tt>. A
+    * <tt>&#42;</tt> matches any characters within a path segment, and <tt>&#42;&#42;</tt> matches any characters across
+    * path segments.
+    */
+   String getEntry();
+
+   /**
+    * Imports an entry. The stream is only valid for the duration of the call.
+    *
+    * @param entry the entry being imported
+    * @param inputStream the content of the entry
+    * @throws IOException if the entry could not be imported
+    */
+   void importEntry(String entry, InputStream inputStream) throws IOException;
+}
@@ -24,6 +24,8 @@ package org.gatein.management.api;
 
 import org.junit.Test;
 
+import java.util.Collections;
+
 import static org.junit.Assert.*;
 /**
  * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
@@ -89,4 +91,78 @@ public class PathAddressTest
       assertEquals(address, address.copy());
       assertFalse(address == address.copy());
    }
+
+   @Test
+   public void testSubAddressView()
+   {
+      PathAddress address = PathAddress.pathAddress("one", "two", "three", "four");
+      PathAddress sub = address.subAddress(1, 3);
+      assertEquals(2, sub.size());
+      assertEquals("two", sub.get(0));
+      assertEquals("three", sub.getLastElement());
+      assertEquals("/two/three", sub.toString());
+      assertEquals(PathAddress.pathAddress("two", "three").hashCode(), sub.hashCode());
+      assertEquals(PathAddress.pathAddress("two", "three", "x"), sub.append("x"));
+      assertEquals(PathAddress.EMPTY_ADDRESS, address.subAddress(4));
+
+      try
+      {
+         sub.get(2);
+         fail("Index outside of the sub address should fail");
+      }
+      catch (IndexOutOfBoundsException e)
+      {
+      }
+   }
+
+   @Test
+   @SuppressWarnings("deprecation")
+   public void testParsedAddressCached()
+   {
+      PathAddress address = PathAddress.pathAddress("/one/two/three");
+      PathAddress other = PathAddress.pathAddress("/one/two/three");
+      assertNotSame(address, other);
+      assertSame(address.segments, other.segments);
+
+      address.addPathTemplateResolver(new PathTemplateResolver()
+      {
+         @Override
+         public String resolve(String templateName)
+         {
+            return "bar";
+         }
+      });
+      assertEquals("bar", address.resolvePathTemplate("foo"));
+      assertNull(other.resolvePathTemplate("foo"));
+   }
+
+   @Test
+   public void testAddressCacheBounded()
+   {
+      for (int i = 0; i < PathAddress.ADDRESS_CACHE_SIZE * 2; i++)
+      {
+         assertEquals("/bounded/" + i, PathAddress.pathAddress("/bounded/" + i).toString());
+      }
+      assertTrue(PathAddress.getCachedAddressCount() <= PathAddress.ADDRESS_CACHE_SIZE);
+   }
+
+   @Test
+   public void testPathTemplateResolvers()
+   {
+      PathAddress address = PathAddress.pathAddress("one", "two");
+      PathAddress resolved = address.withPathTemplateResolvers(Collections.<PathTemplateResolver>singletonList(new PathTemplateResolver()
+      {
+         @Override
+         public String resolve(String templateName)
+         {
+            return templateName.equals("foo") ? "bar" : null;
+         }
+      }));
+
+      assertNull(address.resolvePathTemplate("foo"));
+      assertEquals("bar", resolved.resolvePathTemplate("foo"));
+      assertEquals("bar", resolved.append("three").resolvePathTemplate("foo"));
+      assertEquals(address, resolved);
+      assertEquals(address.hashCode(), resolved.hashCode());
+   }
 }
@@ -28,6 +28,8 @@ import org.junit.Test;
 import java.text.ParseException;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
@@ -369,4 +371,35 @@ public class PathTemplateFilterTest
       // exclusion applies to all elements, no need for multiple !'s, hence an exception
       PathTemplateFilter.parse(Collections.singletonList("template:!first,!second"));
    }
+   @Test
+   public void testParsedFilter() throws ParseException
+   {
+      PathTemplateFilter filter = PathTemplateFilter.parse(Collections.singletonList("foo:bar;abc:!123,456"));
+
+      Assert.assertFalse(address("foo", "bar", "abc", "456").accepts(filter));
+      Assert.assertTrue(address("foo", "bar", "abc", "789").accepts(filter));
+      Assert.assertTrue(address("abc", "789").accepts(filter));
+
+      filter = PathTemplateFilter.parse(Collections.singletonList("foo:!*"));
+      Assert.assertFalse(address("foo", "bar").accepts(filter));
+      Assert.assertTrue(address("abc", "123").accepts(filter));
+   }
+
+   private static PathAddress address(String... templateValues)
+   {
+      final Map<String, String> values = new HashMap<String, String>();
+      for (int i = 0; i < templateValues.length; i += 2)
+      {
+         values.put(templateValues[i], templateValues[i + 1]);
+      }
+
+      return PathAddress.pathAddress("some", "path").withPathTemplateResolvers(Collections.<PathTemplateResolver>singletonList(new PathTemplateResolver()
+      {
+         @Override
+         public String resolve(String templateName)
+         {
+            return values.get(templateName);
+         }
+      }));
+   }
 }
@@ -0,0 +1,129 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.api.binding;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
+ * @version $Revision$
+ */
+public class JsonStreamWriterTest
+{
+   @Test
+   public void testCompact() throws Exception
+   {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      JsonStreamWriter writer = new JsonStreamWriter(out, false);
+      writer.objectStart().key("name").value("foo").key("empty").arrayStart().arrayEnd();
+      writer.key("values").arrayStart().value(1).value(true).nullValue().value(2.5).objectStart().objectEnd().arrayEnd();
+      writer.objectEnd().close();
+
+      assertEquals("{\"name\":\"foo\",\"empty\":[],\"values\":[1,true,null,2.5,{}]}", out.toString("UTF-8"));
+   }
+
+   @Test
+   public void testPretty() throws Exception
+   {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      JsonStreamWriter writer = new JsonStreamWriter(out, true);
+      writer.objectStart().key("name").value("foo").key("children").arrayStart();
+      writer.objectStart().key("name").value("bar").objectEnd();
+      writer.arrayEnd().key("operations").arrayStart().arrayEnd().objectEnd().close();
+
+      String expected = "{\n" +
+         "   \"name\": \"foo\",\n" +
+         "   \"children\": [\n" +
+         "      {\n" +
+         "         \"name\": \"bar\"\n" +
+         "      }\n" +
+         "   ],\n" +
+         "   \"operations\": []\n" +
+         "}";
+      assertEquals(expected, out.toString("UTF-8"));
+   }
+
+   @Test
+   public void testEscaping() throws Exception
+   {
+      String value = "quote\" backslash\\ newline\n tab\t control\u0001 e\u00e9 euro\u20ac clef\ud834\udd1e separator\u2028";
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      new JsonStreamWriter(out, false).value(value).close();
+
+      String expected = "\"quote\\\" backslash\\\\ newline\\n tab\\t control\\u0001 e\u00e9 euro\u20ac clef\ud834\udd1e separator\\u2028\"";
+      assertEquals(expected, out.toString("UTF-8"));
+   }
+
+   @Test
+   public void testBuffer() throws Exception
+   {
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < 10000; i++)
+      {
+         sb.append("\u00e9abc");
+      }
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      new JsonStreamWriter(out, false).arrayStart().value(sb.toString()).arrayEnd().close();
+      assertEquals("[\"" + sb + "\"]", out.toString("UTF-8"));
+   }
+
+   @Test
+   public void testInvalid() throws IOException
+   {
+      JsonStreamWriter writer = new JsonStreamWriter(new ByteArrayOutputStream(), false);
+      writer.objectStart();
+      try
+      {
+         writer.value("foo");
+         fail("Value without a key should fail");
+      }
+      catch (IllegalStateException e)
+      {
+      }
+
+      try
+      {
+         writer.arrayEnd();
+         fail("Ending an array inside an object should fail");
+      }
+      catch (IllegalStateException e)
+      {
+      }
+
+      try
+      {
+         writer.value(Double.NaN);
+         fail("NaN is not a valid JSON number");
+      }
+      catch (IllegalArgumentException e)
+      {
+      }
+   }
+}
@@ -0,0 +1,126 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.api.binding;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
+ * @version $Revision$
+ */
+public class SpoolDirectoryTest
+{
+   @Rule
+   public TemporaryFolder folder = new TemporaryFolder();
+
+   @Test
+   public void testSpoolFile() throws Exception
+   {
+      SpoolDirectory directory = new SpoolDirectory(new File(folder.getRoot(), "spool"), SpoolDirectory.NO_QUOTA);
+      SpoolDirectory.SpoolFile file = directory.createFile(".zip");
+
+      OutputStream out = file.getOutputStream();
+      out.write(new byte[]{1, 2, 3});
+      out.write(4);
+      out.close();
+
+      assertEquals(4, file.length());
+      assertEquals(4, directory.getUsage());
+
+      InputStream in = file.getInputStream();
+      byte[] data = new byte[4];
+      assertEquals(4, in.read(data));
+      assertEquals(-1, in.read());
+      in.close();
+      assertArrayEquals(new byte[]{1, 2, 3, 4}, data);
+
+      file.close();
+      assertFalse(file.getFile().exists());
+      assertEquals(0, directory.getUsage());
+   }
+
+   @Test
+   public void testQuota() throws Exception
+   {
+      SpoolDirectory directory = new SpoolDirectory(folder.getRoot(), 10);
+      SpoolDirectory.SpoolFile file1 = directory.createFile(".zip");
+      SpoolDirectory.SpoolFile file2 = directory.createFile(".zip");
+
+      file1.getOutputStream().write(new byte[6]);
+      try
+      {
+         file2.getOutputStream().write(new byte[6]);
+         fail("Quota should have been exceeded");
+      }
+      catch (IOException e)
+      {
+      }
+      assertEquals(6, directory.getUsage());
+
+      file1.close();
+      file2.getOutputStream().write(new byte[6]);
+      assertEquals(6, directory.getUsage());
+      file2.close();
+   }
+
+   @Test
+   public void testSharedDirectory() throws Exception
+   {
+      SpoolDirectory directory = new SpoolDirectory(folder.getRoot(), SpoolDirectory.NO_QUOTA);
+      SpoolDirectory.SpoolFile file = directory.createFile(".zip");
+      File other = folder.newFile("other.txt");
+
+      SpoolDirectory.SpoolFile otherFile = new SpoolDirectory(folder.getRoot(), SpoolDirectory.NO_QUOTA).createFile(".zip");
+      assertTrue(file.getFile().exists());
+      assertTrue(other.exists());
+      assertFalse(file.getFile().getParentFile().equals(otherFile.getFile().getParentFile()));
+
+      file.close();
+      otherFile.close();
+   }
+
+   @Test
+   public void testCleanup() throws Exception
+   {
+      File orphan = folder.newFolder("spool-1.dir");
+      assertTrue(new File(orphan, ".lock").createNewFile());
+      File leftover = new File(orphan, "spool-2.zip");
+      assertTrue(leftover.createNewFile());
+      File unlocked = folder.newFolder("spool-3.dir");
+
+      SpoolDirectory.SpoolFile file = new SpoolDirectory(folder.getRoot(), SpoolDirectory.NO_QUOTA).createFile(".zip");
+      assertFalse(leftover.exists());
+      assertFalse(orphan.exists());
+      assertTrue(unlocked.exists());
+      file.close();
+   }
+}
@@ -0,0 +1,71 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.api.binding;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
+ * @version $Revision$
+ */
+public class Utf8WriterTest
+{
+   @Test
+   public void testEncoding() throws Exception
+   {
+      String text = "ascii \u00e9\u00e8 \u20ac \ud83d\ude00 end";
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      Utf8Writer writer = new Utf8Writer(out);
+      writer.write(text);
+      writer.close();
+
+      assertArrayEquals(text.getBytes("UTF-8"), out.toByteArray());
+   }
+
+   @Test
+   public void testSplitSurrogatePair() throws Exception
+   {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      Utf8Writer writer = new Utf8Writer(out);
+      writer.write('\ud83d');
+      writer.write('\ude00');
+      writer.close();
+
+      assertArrayEquals("\ud83d\ude00".getBytes("UTF-8"), out.toByteArray());
+   }
+
+   @Test
+   public void testUnpairedSurrogate() throws Exception
+   {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      Utf8Writer writer = new Utf8Writer(out);
+      writer.write("a\ude00b\ud83d");
+      writer.close();
+
+      assertEquals("a?b?", new String(out.toByteArray(), "UTF-8"));
+   }
+}
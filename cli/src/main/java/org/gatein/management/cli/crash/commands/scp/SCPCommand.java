@@ -43,6 +43,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -57,6 +58,7 @@ public abstract class SCPCommand extends AbstractCommand implements Runnable
    private String path;
    private String containerName;
    private String jaasDomain;
+   private String userName;
 
    private SCPManagementCommand scpManagementCommand;
    private Thread thread;
@@ -112,7 +114,7 @@ public abstract class SCPCommand extends AbstractCommand implements Runnable
 
    private void execute() throws Exception
    {
-      String userName = session.getAttribute(SSHLifeCycle.USERNAME);
+      userName = session.getAttribute(SSHLifeCycle.USERNAME);
       String password = session.getAttribute(SSHLifeCycle.PASSWORD);
 
       // Log in
@@ -166,6 +168,22 @@ public abstract class SCPCommand extends AbstractCommand implements Runnable
 
    protected abstract void execute(ManagementController controller, String path, Map<String, List<String>> attributes) throws Exception;
 
+   /**
+    * Calls the callable within a request of the authenticated user, for commands handing work to other threads.
+    */
+   protected <T> T executeInRequest(Callable<T> callable) throws Exception
+   {
+      scpManagementCommand.start(userName, containerName);
+      try
+      {
+         return callable.call();
+      }
+      finally
+      {
+         scpManagementCommand.end();
+      }
+   }
+
    protected String getFileName()
    {
       int index = path.lastIndexOf("/");
@@ -27,16 +27,32 @@ import org.gatein.common.logging.Logger;
 import org.gatein.common.logging.LoggerFactory;
 import org.gatein.management.api.ContentType;
 import org.gatein.management.api.PathAddress;
+import org.gatein.management.api.binding.SpoolDirectory;
 import org.gatein.management.api.controller.ManagedRequest;
 import org.gatein.management.api.controller.ManagementController;
 import org.gatein.management.api.operation.OperationNames;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
+ * Imports the files copied to the server. Recursive copies (<tt>scp -r</tt>) import every file of the copied
+ * directories, one after the other, or concurrently when the {@value #PARALLEL_ATTRIBUTE} attribute is <tt>true</tt>
+ * (one thread per available processor) or a number of threads, in which case files are spooled to disk as they are
+ * received.
+ *
  * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
  * @version $Revision$
  */
@@ -44,6 +60,10 @@ public class SinkCommand extends SCPCommand
 {
    private static final Logger log = LoggerFactory.getLogger(SinkCommand.class);
 
+   public static final String PARALLEL_ATTRIBUTE = "parallel";
+
+   private static final int BUFFER_SIZE = 8192;
+
    protected SinkCommand(SCPAction action)
    {
       super(action);
@@ -52,68 +72,266 @@ public class SinkCommand extends SCPCommand
    @Override
    protected void execute(ManagementController controller, String path, Map<String, List<String>> attributes) throws Exception
    {
-      ack();
-      String line = readLine();
-      while (true)
+      // Read protocol messages and file data in bulk rather than byte per byte from the channel
+      in = new BufferedInputStream(in, BUFFER_SIZE);
+
+      int threads = getThreads(attributes.remove(PARALLEL_ATTRIBUTE));
+      ExecutorService executor = (threads > 1) ? Executors.newFixedThreadPool(threads, new SinkThreadFactory()) : null;
+      List<FileImport> imports = new ArrayList<FileImport>();
+      try
       {
-         switch (line.charAt(0))
+         ack();
+         int depth = 0;
+         int c;
+         while ((c = in.read()) != -1)
          {
-            case 'C': // single file copy
-               int mode = Integer.parseInt(line.substring(1, 5));
-               final int length = Integer.parseInt(line.substring(6, line.indexOf(' ', 6)));
-               if (length == 0) throw new Exception("Empty file.");
+            String line = (char) c + readLine();
+            switch (line.charAt(0))
+            {
+               case 'C': // file copy
+                  int index = line.indexOf(' ', 6);
+                  final long length = Long.parseLong(line.substring(6, index));
+                  if (length == 0) throw new Exception("Empty file.");
+
+                  String fileName = line.substring(index + 1);
+                  if (fileName.length() == 0) throw new Exception("Invalid file name specified in protocol message: " + line);
+                  if (fileName.endsWith(".xml"))
+                  {
+                     throw new Exception("Xml files not supported for import.");
+                  }
+                  ack();
+
+                  CopiedFileStream inputStream = new CopiedFileStream(in, length);
+                  if (executor == null)
+                  {
+                     importFile(controller, path, attributes, inputStream);
+                     inputStream.skipRemaining();
+                  }
+                  else
+                  {
+                     FileImport fileImport = new FileImport(controller, path, attributes, fileName, spool(inputStream));
+                     fileImport.future = executor.submit(fileImport);
+                     imports.add(fileImport);
+                  }
 
-               String fileName = line.substring(line.indexOf(' ', 6)+1);
-               if (fileName == null) throw new Exception("Invalid file name specified in protocol message: " + line);
-               ack();
+                  readAck();
+                  ack();
+                  break;
 
-               String operationName = OperationNames.IMPORT_RESOURCE;
-               if (fileName.endsWith(".xml"))
+               case 'D': // recursive directory copy
+                  depth++;
+                  ack();
+                  break;
+               case 'E':
+                  if (depth-- == 0) throw new Exception("Unexpected end of directory.");
+                  ack();
+                  break;
+               case 'T':
+                  throw new Exception("Modification and access times not supported.");
+               default:
+                  throw new Exception("Unknown protocol message: " + line);
+            }
+         }
+
+         for (FileImport fileImport : imports)
+         {
+            try
+            {
+               fileImport.future.get();
+            }
+            catch (ExecutionException e)
+            {
+               Throwable cause = e.getCause();
+               if (cause instanceof Exception)
                {
-                  throw new Exception("Xml files not supported for import.");
+                  log.error("Exception importing file " + fileImport.fileName, cause);
+                  throw new Exception("Could not import file " + fileImport.fileName + ": " + cause.getMessage(), cause);
                }
 
-               InputStream inputStream = new InputStream()
-               {
-                  /**
-                   * How many we've read so far.
-                   */
-                  int count = 0;
+               throw e;
+            }
+         }
+      }
+      finally
+      {
+         if (executor != null)
+         {
+            executor.shutdownNow();
+            for (FileImport fileImport : imports)
+            {
+               if (fileImport.future.cancel(true)) fileImport.file.close();
+            }
+         }
+      }
+   }
 
-                  @Override
-                  public int read() throws IOException
+   private static void importFile(ManagementController controller, String path, Map<String, List<String>> attributes, InputStream inputStream)
+   {
+      controller.execute(ManagedRequest.Factory.create(OperationNames.IMPORT_RESOURCE, PathAddress.pathAddress(path), attributes, inputStream, ContentType.ZIP));
+   }
+
+   private static SpoolDirectory.SpoolFile spool(CopiedFileStream inputStream) throws IOException
+   {
+      SpoolDirectory.SpoolFile file = SpoolDirectory.getDefault().createFile(".zip");
+      try
+      {
+         OutputStream out = file.getOutputStream();
+         try
+         {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1)
+            {
+               out.write(buffer, 0, read);
+            }
+         }
+         finally
+         {
+            out.close();
+         }
+      }
+      catch (IOException e)
+      {
+         file.close();
+         throw e;
+      }
+      return file;
+   }
+
+   private static int getThreads(List<String> values) throws Exception
+   {
+      String value = (values == null || values.isEmpty()) ? null : values.get(0);
+      if (value == null || value.equalsIgnoreCase("false")) return 1;
+      if (value.equalsIgnoreCase("true")) return Runtime.getRuntime().availableProcessors();
+
+      try
+      {
+         int threads = Integer.parseInt(value.trim());
+         if (threads < 1) throw new NumberFormatException();
+
+         return threads;
+      }
+      catch (NumberFormatException e)
+      {
+         throw new Exception("Invalid value '" + value + "' for attribute " + PARALLEL_ATTRIBUTE + ". Expected true, false or a number of threads.");
+      }
+   }
+
+   /**
+    * Content of a copied file, read straight from the channel.
+    */
+   private static class CopiedFileStream extends InputStream
+   {
+      private final InputStream in;
+      private long remaining;
+
+      private CopiedFileStream(InputStream in, long length)
+      {
+         this.in = in;
+         this.remaining = length;
+      }
+
+      @Override
+      public int read() throws IOException
+      {
+         if (remaining == 0) return -1;
+
+         int value = in.read();
+         if (value == -1) throw new IOException("Abnormal end of stream reached");
+
+         remaining--;
+         return value;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException
+      {
+         if (remaining == 0) return -1;
+         if (len == 0) return 0;
+
+         int read = in.read(b, off, (int) Math.min(len, remaining));
+         if (read == -1) throw new IOException("Abnormal end of stream reached");
+
+         remaining -= read;
+         return read;
+      }
+
+      @Override
+      public int available() throws IOException
+      {
+         return (int) Math.min(in.available(), remaining);
+      }
+
+      /**
+       * Skips what the import did not read, so the channel is positioned at the next protocol message.
+       */
+      private void skipRemaining() throws IOException
+      {
+         byte[] buffer = new byte[BUFFER_SIZE];
+         while (read(buffer, 0, buffer.length) != -1)
+         {
+         }
+      }
+   }
+
+   private class FileImport implements Callable<Void>
+   {
+      private final ManagementController controller;
+      private final String path;
+      private final Map<String, List<String>> attributes;
+      private final String fileName;
+      private final SpoolDirectory.SpoolFile file;
+      private Future<Void> future;
+
+      private FileImport(ManagementController controller, String path, Map<String, List<String>> attributes, String fileName, SpoolDirectory.SpoolFile file)
+      {
+         this.controller = controller;
+         this.path = path;
+         this.attributes = attributes;
+         this.fileName = fileName;
+         this.file = file;
+      }
+
+      @Override
+      public Void call() throws Exception
+      {
+         try
+         {
+            return executeInRequest(new Callable<Void>()
+            {
+               @Override
+               public Void call() throws Exception
+               {
+                  InputStream inputStream = file.getInputStream();
+                  try
                   {
-                     if (count < length)
-                     {
-                        int value = in.read();
-                        if (value == -1)
-                        {
-                           throw new IOException("Abnormal end of stream reached");
-                        }
-                        count++;
-                        return value;
-                     }
-                     else
-                     {
-                        return -1;
-                     }
+                     importFile(controller, path, attributes, inputStream);
                   }
-               };
-
-               controller.execute(ManagedRequest.Factory.create(operationName, PathAddress.pathAddress(path), attributes, inputStream, ContentType.ZIP));
-               ack();
-               readAck();
-               
-               return;
-            
-            case 'D': // recursive directory copy
-            case 'E':
-               throw new Exception("Recursive directory copy is not supported.");
-            case 'T':
-               throw new Exception("Modification and access times not supported.");
-            default:
-               throw new Exception("Unknown protocol message: " + line);
+                  finally
+                  {
+                     inputStream.close();
+                  }
+                  return null;
+               }
+            });
          }
+         finally
+         {
+            file.close();
+         }
+      }
+   }
+
+   private static class SinkThreadFactory implements ThreadFactory
+   {
+      private final AtomicInteger count = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable runnable)
+      {
+         Thread thread = new Thread(runnable, "gatein-management-scp-import-" + count.incrementAndGet());
+         thread.setDaemon(true);
+         return thread;
       }
    }
 }
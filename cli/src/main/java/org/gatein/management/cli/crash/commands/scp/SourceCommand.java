@@ -23,16 +23,21 @@
 package org.gatein.management.cli.crash.commands.scp;
 
 import org.crsh.ssh.term.scp.SCPAction;
-import org.crsh.util.IO;
 import org.gatein.management.api.ContentType;
 import org.gatein.management.api.PathAddress;
+import org.gatein.management.api.binding.SpoolDirectory;
 import org.gatein.management.api.controller.ManagedRequest;
 import org.gatein.management.api.controller.ManagedResponse;
 import org.gatein.management.api.controller.ManagementController;
 import org.gatein.management.api.operation.OperationNames;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.List;
 import java.util.Map;
 
@@ -52,22 +57,56 @@ public class SourceCommand extends SCPCommand
    {
       ManagedResponse response = getResponse(controller, path, attributes);
 
-      ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-      response.writeResult(outputStream, true);
-      outputStream.flush();
-      outputStream.close();
+      // Spool the result to learn its length for the protocol message, without holding it in memory
+      SpoolDirectory.SpoolFile file = null;
+      try
+      {
+         file = SpoolDirectory.getDefault().createFile(".tmp");
+         OutputStream outputStream = new BufferedOutputStream(file.getOutputStream());
+         try
+         {
+            response.writeResult(outputStream, true);
+         }
+         finally
+         {
+            outputStream.close();
+         }
 
-      out.write("C0644 ".getBytes());
-      out.write(Integer.toString(outputStream.size()).getBytes());
-      out.write(" ".getBytes());
-      out.write(getFileName().getBytes());
-      out.write("\n".getBytes());
-      out.flush();
+         out.write("C0644 ".getBytes());
+         out.write(Long.toString(file.length()).getBytes());
+         out.write(" ".getBytes());
+         out.write(getFileName().getBytes());
+         out.write("\n".getBytes());
+         out.flush();
 
-      readAck();
-      IO.copy(new ByteArrayInputStream(outputStream.toByteArray()), out);
-      ack();
-      readAck();
+         readAck();
+         FileInputStream inputStream = new FileInputStream(file.getFile());
+         try
+         {
+            FileChannel channel = inputStream.getChannel();
+            WritableByteChannel target = Channels.newChannel(out);
+            long size = channel.size();
+            long position = 0;
+            while (position < size)
+            {
+               position += channel.transferTo(position, size - position, target);
+            }
+            out.flush();
+         }
+         finally
+         {
+            inputStream.close();
+         }
+         ack();
+         readAck();
+      }
+      finally
+      {
+         if (file != null) file.close();
+
+         // The response is not written if the spool file cannot be created
+         if (response instanceof Closeable) ((Closeable) response).close();
+      }
    }
 
    private ManagedResponse getResponse(ManagementController controller, String path, Map<String, List<String>> attributes)
@@ -38,6 +38,7 @@ execute = { String operationName, PathAddress pathAddress, ContentType contentTy
 
   begin();
 
+  response = null;
   try
   {
     response = controller.execute(ManagedRequest.Factory.create(operationName, pathAddress, attributes, data, contentType));
@@ -69,6 +70,8 @@ execute = { String operationName, PathAddress pathAddress, ContentType contentTy
   }
   finally
   {
+    // Releases the resources of a response the command did not write
+    if (response instanceof Closeable) response.close();
     end();
   }
 };
@@ -25,12 +25,16 @@ package org.gatein.management.core.api;
 import org.gatein.management.api.ManagedDescription;
 import org.gatein.management.api.ManagedResource;
 import org.gatein.management.api.PathAddress;
-import org.gatein.management.api.PathAddressIterator;
+import org.gatein.management.api.PathTemplateResolver;
 import org.gatein.management.api.operation.OperationHandler;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
@@ -40,6 +44,7 @@ public abstract class AbstractManagedResource implements ManagedResource, Manage
 {
    protected final PathElement pathElement;
    protected final AbstractManagedResource parent;
+   private final AtomicLong revision = new AtomicLong();
 
    protected AbstractManagedResource(PathElement pathElement, AbstractManagedResource parent)
    {
@@ -47,16 +52,44 @@ public abstract class AbstractManagedResource implements ManagedResource, Manage
       this.parent = parent;
    }
 
+   /**
+    * Resolves the address against this resource, capturing the path template resolvers of the resources matched along
+    * the way without modifying the address itself.
+    *
+    * @param address the address of the resource
+    * @return the resolved address or null if no resource is registered for the address
+    */
+   public final ResolvedAddress resolveAddress(PathAddress address)
+   {
+      List<PathTemplateResolver> resolvers = new ArrayList<PathTemplateResolver>(2);
+      AbstractManagedResource resource = resolve(address, resolvers);
+      if (resource == null) return null;
+
+      // Resolvers of deeper resources take precedence
+      Collections.reverse(resolvers);
+      return new ResolvedAddress(resource, resolvers);
+   }
+
+   /**
+    * @return the number of modifications made to the resource tree this resource belongs to.
+    */
+   public final long getRevision()
+   {
+      return getRoot().revision.get();
+   }
+
    @Override
    public final ManagedDescription getResourceDescription(PathAddress address)
    {
-      return getResourceDescription(address.iterator());
+      AbstractManagedResource resource = resolve(address);
+
+      return (resource == null) ? null : resource.getResourceDescription();
    }
 
    @Override
    public final OperationHandler getOperationHandler(PathAddress address, String operationName)
    {
-      OperationEntry entry = getOperationEntry(address.iterator(), operationName);
+      OperationEntry entry = getOperationEntry(address, operationName);
 
       return (entry == null) ? null : entry.getOperationHandler();
    }
@@ -64,7 +97,7 @@ public abstract class AbstractManagedResource implements ManagedResource, Manage
    @Override
    public final ManagedDescription getOperationDescription(PathAddress address, String operationName)
    {
-      OperationEntry entry = getOperationEntry(address.iterator(), operationName);
+      OperationEntry entry = getOperationEntry(address, operationName);
 
       return (entry == null) ? null : entry.getDescription();
    }
@@ -72,39 +105,83 @@ public abstract class AbstractManagedResource implements ManagedResource, Manage
    @Override
    public Map<String, ManagedDescription> getOperationDescriptions(PathAddress address)
    {
-      Map<String, OperationEntry> entries = new HashMap<String, OperationEntry>();
-      getOperationEntries(address.iterator(), entries);
-
-      Map<String, ManagedDescription> map = new HashMap<String, ManagedDescription>(entries.size());
-      for (Map.Entry<String, OperationEntry> entry : entries.entrySet())
-      {
-         map.put(entry.getKey(), entry.getValue().description);
-      }
+      AbstractManagedResource resource = resolve(address);
 
-      return map;
+      return (resource == null) ? Collections.<String, ManagedDescription>emptyMap() : resource.getOperationTable().descriptions;
    }
 
    @Override
    public final ManagedResource getSubResource(PathAddress address)
    {
-      return getSubResource(address.iterator());
+      return resolve(address);
    }
 
    @Override
    public final Set<String> getSubResourceNames(PathAddress address)
    {
-      return getChildNames(address.iterator());
+      AbstractManagedResource resource = resolve(address);
+
+      return (resource == null) ? Collections.<String>emptySet() : resource.getChildNames();
+   }
+
+   protected final void modified()
+   {
+      getRoot().revision.incrementAndGet();
+   }
+
+   private AbstractManagedResource getRoot()
+   {
+      AbstractManagedResource root = this;
+      while (root.parent != null)
+      {
+         root = root.parent;
+      }
+
+      return root;
+   }
+
+   @SuppressWarnings("deprecation")
+   private AbstractManagedResource resolve(PathAddress address)
+   {
+      List<PathTemplateResolver> resolvers = new ArrayList<PathTemplateResolver>(2);
+      AbstractManagedResource resource = resolve(address, resolvers);
+      if (resource != null)
+      {
+         for (PathTemplateResolver resolver : resolvers)
+         {
+            address.addPathTemplateResolver(resolver);
+         }
+      }
+
+      return resource;
    }
 
-   protected abstract ManagedDescription getResourceDescription(PathAddressIterator iterator);
+   private OperationEntry getOperationEntry(PathAddress address, String operationName)
+   {
+      if (operationName == null) return null;
+
+      AbstractManagedResource resource = resolve(address);
 
-   protected abstract OperationEntry getOperationEntry(PathAddressIterator iterator, String operationName);
+      return (resource == null) ? null : resource.getOperationTable().entries.get(operationName);
+   }
 
-   protected abstract void getOperationEntries(PathAddressIterator iterator, Map<String, OperationEntry> entries);
+   /**
+    * Resolves the resource responsible for the given address, relative to this resource.
+    *
+    * @param address the address of the resource
+    * @param resolvers list to which the path template resolvers of the matched resources are added
+    * @return the resource or null if no resource is registered for the address
+    */
+   protected abstract AbstractManagedResource resolve(PathAddress address, List<PathTemplateResolver> resolvers);
 
-   protected abstract AbstractManagedResource getSubResource(PathAddressIterator iterator);
+   protected abstract ManagedDescription getResourceDescription();
 
-   protected abstract Set<String> getChildNames(PathAddressIterator iterator);
+   /**
+    * @return the operations of this resource, including operations inherited from parent resources.
+    */
+   protected abstract OperationTable getOperationTable();
+
+   protected abstract Set<String> getChildNames();
 
    public String getPath()
    {
@@ -118,6 +195,52 @@ public abstract class AbstractManagedResource implements ManagedResource, Manage
       }
    }
 
+   /**
+    * Immutable table of the operations available to a resource, computed when operations are registered so that
+    * looking up an operation or listing operation descriptions never has to walk up the parent resources.
+    */
+   protected static final class OperationTable
+   {
+      protected static final OperationTable EMPTY = new OperationTable(Collections.<String, OperationEntry>emptyMap(), null);
+
+      private final Map<String, OperationEntry> entries;
+      private final Map<String, OperationEntry> inheritable;
+      private final Map<String, ManagedDescription> descriptions;
+
+      /**
+       * @param operations the operations registered directly on the resource
+       * @param parent the operation table of the parent resource, or null for the root resource
+       */
+      protected OperationTable(Map<String, OperationEntry> operations, OperationTable parent)
+      {
+         Map<String, OperationEntry> inherited = (parent == null) ? Collections.<String, OperationEntry>emptyMap() : parent.inheritable;
+
+         Map<String, OperationEntry> entries = new HashMap<String, OperationEntry>(inherited);
+         entries.putAll(operations);
+
+         // Operations inherited by sub-resources, a non inherited operation does not hide one inherited from above.
+         Map<String, OperationEntry> inheritable = inherited;
+         for (Map.Entry<String, OperationEntry> entry : operations.entrySet())
+         {
+            if (entry.getValue().isInherited())
+            {
+               if (inheritable == inherited) inheritable = new HashMap<String, OperationEntry>(inherited);
+               inheritable.put(entry.getKey(), entry.getValue());
+            }
+         }
+
+         Map<String, ManagedDescription> descriptions = new HashMap<String, ManagedDescription>(entries.size());
+         for (Map.Entry<String, OperationEntry> entry : entries.entrySet())
+         {
+            descriptions.put(entry.getKey(), entry.getValue().description);
+         }
+
+         this.entries = Collections.unmodifiableMap(entries);
+         this.inheritable = (inheritable == inherited) ? inherited : Collections.unmodifiableMap(inheritable);
+         this.descriptions = Collections.unmodifiableMap(descriptions);
+      }
+   }
+
    protected static final class OperationEntry
    {
       private final OperationHandler operationHandler;
@@ -42,6 +42,9 @@ import org.gatein.management.spi.ManagementExtension;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.ServiceLoader;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
@@ -51,19 +54,74 @@ public class ManagementServiceImpl implements ManagementService
 {
    private static final Logger log = LoggerFactory.getLogger(ManagementService.class);
 
-   private ManagedResource rootResource;
-   private List<ManagementExtension> extensions;
-   private ManagementProviders providers;
-   private BindingProvider globalBindingProvider;
+   // Registered resources are frozen once loaded, and published (or replaced on reload) as a whole.
+   private final AtomicReference<Snapshot> snapshot = new AtomicReference<Snapshot>();
 
    @Override
    public ManagedResource getManagedResource(PathAddress address)
    {
-      return rootResource.getSubResource(address);
+      return getSnapshot().rootResource.getSubResource(address);
    }
 
    @Override
    public BindingProvider getBindingProvider(final String componentName)
+   {
+      return getBindingProvider(getSnapshot(), componentName);
+   }
+
+   /**
+    * Acquires the resources currently loaded for the duration of a request. Extensions replaced by a reload are only
+    * destroyed once every request which acquired them has released them.
+    *
+    * @return the resources, which must be released once the request no longer needs them.
+    */
+   public Resources acquire()
+   {
+      while (true)
+      {
+         Snapshot current = getSnapshot();
+         if (current.acquire()) return new Resources(current);
+      }
+   }
+
+   /**
+    * Loads a new set of extensions and swaps them in for the current ones. Requests already running keep using the
+    * resources they started with, while new requests see the reloaded resources. The replaced extensions are destroyed
+    * once the last request which {@link #acquire() acquired} them has released them.
+    */
+   @Override
+   public synchronized void reloadExtensions()
+   {
+      load();
+   }
+
+   @Override
+   public synchronized void load()
+   {
+      release(snapshot.getAndSet(createSnapshot()));
+   }
+
+   @Override
+   public synchronized void unload()
+   {
+      release(snapshot.getAndSet(null));
+   }
+
+   private static void release(Snapshot previous)
+   {
+      // Drops the reference held while the snapshot was current, the extensions are destroyed once requests are done.
+      if (previous != null) previous.release();
+   }
+
+   private Snapshot getSnapshot()
+   {
+      Snapshot current = snapshot.get();
+      if (current == null) throw new IllegalStateException("Management service has not been loaded.");
+
+      return current;
+   }
+
+   private static BindingProvider getBindingProvider(final Snapshot snapshot, final String componentName)
    {
       return new BindingProvider()
       {
@@ -71,29 +129,21 @@ public class ManagementServiceImpl implements ManagementService
          public <T> Marshaller<T> getMarshaller(Class<T> type, ContentType contentType) throws BindingException
          {
             Marshaller<T> marshaller = null;
-            BindingProvider bp = providers.getBindingProvider(componentName);
+            BindingProvider bp = snapshot.providers.getBindingProvider(componentName);
             if (bp != null)
             {
                marshaller = bp.getMarshaller(type, contentType);
                if (marshaller != null) return marshaller;
             }
 
-            return globalBindingProvider.getMarshaller(type, contentType);
+            return snapshot.globalBindingProvider.getMarshaller(type, contentType);
          }
       };
    }
 
-   @Override
-   public void reloadExtensions()
+   private Snapshot createSnapshot()
    {
-      unload();
-      load();
-   }
-
-   @Override
-   public void load()
-   {
-      extensions = new ArrayList<ManagementExtension>();
+      List<ManagementExtension> extensions = new ArrayList<ManagementExtension>();
 
       SimpleManagedResource resource = new SimpleManagedResource(null, null, new ManagedDescription()
       {
@@ -124,29 +174,102 @@ public class ManagementServiceImpl implements ManagementService
       log.debug("Successfully loaded " + extensions.size() + " management extension(s).");
 
       initGlobalOperations(resource);
+      resource.freeze();
 
-      rootResource = resource;
-      this.providers = providers;
-      globalBindingProvider = new GlobalBindingProvider();
+      return new Snapshot(resource, extensions, providers, new GlobalBindingProvider());
    }
 
-   @Override
-   public void unload()
+   private static void destroy(Snapshot snapshot)
    {
-      if (extensions != null)
+      for (ManagementExtension extension : snapshot.extensions)
       {
-         for (ManagementExtension extension : extensions)
+         try
          {
             extension.destroy();
          }
-         extensions.clear();
+         catch (Exception e)
+         {
+            log.error("Could not destroy extension " + extension, e);
+         }
       }
 
-      rootResource = null;
+      snapshot.globalBindingProvider.destroy();
    }
 
    private void initGlobalOperations(ManagedResource.Registration registration)
    {
       registration.registerOperationHandler(OperationNames.READ_RESOURCE, GlobalOperationHandlers.READ_RESOURCE, GlobalOperationHandlers.READ_RESOURCE, true);
    }
+
+   /**
+    * The resources of a request, see {@link ManagementServiceImpl#acquire()}.
+    */
+   public static final class Resources
+   {
+      private final Snapshot snapshot;
+      private final AtomicBoolean released = new AtomicBoolean();
+
+      private Resources(Snapshot snapshot)
+      {
+         this.snapshot = snapshot;
+      }
+
+      public ManagedResource getRootResource()
+      {
+         return snapshot.rootResource;
+      }
+
+      public BindingProvider getBindingProvider(String componentName)
+      {
+         return ManagementServiceImpl.getBindingProvider(snapshot, componentName);
+      }
+
+      /**
+       * Releases the resources. Calling this more than once has no effect.
+       */
+      public void release()
+      {
+         if (released.compareAndSet(false, true))
+         {
+            snapshot.release();
+         }
+      }
+   }
+
+   private static final class Snapshot
+   {
+      private final ManagedResource rootResource;
+      private final List<ManagementExtension> extensions;
+      private final ManagementProviders providers;
+      private final GlobalBindingProvider globalBindingProvider;
+
+      // One reference is held by the service while the snapshot is current, and one by each request using it.
+      private final AtomicInteger references = new AtomicInteger(1);
+
+      private Snapshot(ManagedResource rootResource, List<ManagementExtension> extensions, ManagementProviders providers, GlobalBindingProvider globalBindingProvider)
+      {
+         this.rootResource = rootResource;
+         this.extensions = extensions;
+         this.providers = providers;
+         this.globalBindingProvider = globalBindingProvider;
+      }
+
+      private boolean acquire()
+      {
+         while (true)
+         {
+            int count = references.get();
+            if (count == 0) return false;
+            if (references.compareAndSet(count, count + 1)) return true;
+         }
+      }
+
+      private void release()
+      {
+         if (references.decrementAndGet() == 0)
+         {
+            destroy(this);
+         }
+      }
+   }
 }
@@ -26,7 +26,10 @@ import org.gatein.management.api.PathAddress;
 import org.gatein.management.api.PathTemplateResolver;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
@@ -86,6 +89,8 @@ public class PathElement
    private final List<Group> groups;
    private final String regex;
    private final Pattern pattern;
+   private final int minimumSegments;
+   private final Segment[] segments;
 
    public PathElement(String value, List<Group> groups, String regex)
    {
@@ -93,6 +98,8 @@ public class PathElement
       this.groups = groups;
       this.regex = regex;
       this.pattern = Pattern.compile(regex);
+      this.minimumSegments = minimumSegments(value);
+      this.segments = compileSegments(value);
    }
 
    public String getValue()
@@ -105,6 +112,48 @@ public class PathElement
       return !value.equals(regex);
    }
 
+   /**
+    * @return the minimum number of address segments a path must have in order to match this path element.
+    */
+   public int getMinimumSegments()
+   {
+      return minimumSegments;
+   }
+
+   /**
+    * @return the maximum number of address segments a path can have in order to match this path element.
+    */
+   public int getMaximumSegments()
+   {
+      if (segments == null || segments[segments.length - 1].tail != null) return Integer.MAX_VALUE;
+
+      return segments.length;
+   }
+
+   /**
+    * Creates a matcher which matches this path element against consecutive segments of an address, without having to
+    * join the segments and run the full regular expression of the path element for simple templates.
+    *
+    * @param address the address
+    * @param start index of the first segment to match
+    * @return the matcher
+    */
+   public SegmentMatcher matcher(PathAddress address, int start)
+   {
+      return new SegmentMatcher(address, start);
+   }
+
+   /**
+    * @param segment a single path segment, i.e. not containing any '/'
+    * @return true if this path element matches the segment.
+    */
+   public boolean matchesSegment(String segment)
+   {
+      if (segments == null || segments.length != 1) return matches(segment);
+
+      return segments[0].matches(segment);
+   }
+
    public boolean matches(String path)
    {
       int start = 0;
@@ -135,6 +184,207 @@ public class PathElement
       return null;
    }
 
+   /**
+    * Captures the values of all template parameters of this path element from the address segments between
+    * {@code start} (inclusive) and {@code end} (exclusive), which are expected to match this path element.
+    *
+    * @return the template parameter values keyed by name. Parameters which captured an empty value are left out.
+    */
+   public Map<String, String> capture(PathAddress address, int start, int end)
+   {
+      if (groups.isEmpty()) return Collections.emptyMap();
+
+      Map<String, String> values = new HashMap<String, String>(groups.size() * 2);
+      if (segments != null)
+      {
+         int group = 0;
+         for (int i = 0; i < segments.length && group < groups.size(); i++)
+         {
+            Segment segment = segments[i];
+            if (segment.tail == null && segment.suffix == null) continue;
+
+            String value;
+            if (segment.tail != null)
+            {
+               value = join(address, start + i, end);
+            }
+            else
+            {
+               String s = address.get(start + i);
+               value = s.substring(segment.prefix.length(), s.length() - segment.suffix.length());
+            }
+            put(values, groups.get(group++).name, value);
+         }
+      }
+      else
+      {
+         Matcher matcher = pattern.matcher(join(address, start, end));
+         if (matcher.find())
+         {
+            for (Group group : groups)
+            {
+               put(values, group.name, matcher.group(group.group));
+            }
+         }
+      }
+
+      return values;
+   }
+
+   private static void put(Map<String, String> values, String name, String value)
+   {
+      if (value != null && value.length() > 0 && !values.containsKey(name))
+      {
+         values.put(name, value);
+      }
+   }
+
+   private static String join(PathAddress address, int start, int end)
+   {
+      if (end - start == 1) return address.get(start);
+
+      StringBuilder sb = new StringBuilder();
+      for (int i = start; i < end; i++)
+      {
+         if (i > start) sb.append('/');
+         sb.append(address.get(i));
+      }
+
+      return sb.toString();
+   }
+
+   private static final String REGEX_META_CHARACTERS = "\\.[]{}()*+?^$|";
+
+   /**
+    * Compiles the path element into segment matchers, one per '/' separated part of the value. Returns null when the
+    * template is not simple enough to match segment by segment, in which case the regular expression is used. Simple
+    * templates have parts which are either literal, a single default template parameter with an optional literal
+    * prefix and suffix, or (last part only) a single template parameter repeating a character class or '.' like
+    * {@code {nav-uri: .*}} which can span several segments.
+    */
+   private static Segment[] compileSegments(String value)
+   {
+      List<Segment> segments = new ArrayList<Segment>();
+      StringBuilder prefix = new StringBuilder();
+      String groupPrefix = null;
+      String groupExpression = null;
+      boolean group = false;
+      int length = value.length();
+      int i = 0;
+      while (i <= length)
+      {
+         char c = (i < length) ? value.charAt(i) : '/';
+         if (c == '/')
+         {
+            if (i == 0 || i == length - 1) return null;
+
+            Segment segment;
+            if (!group)
+            {
+               segment = new Segment(prefix.toString(), null, null);
+            }
+            else if (groupExpression == null)
+            {
+               segment = new Segment(groupPrefix, prefix.toString(), null);
+            }
+            else
+            {
+               // Only a last part consisting of a single repeated character class may be matched segment by segment
+               if (i != length || groupPrefix.length() > 0 || prefix.length() > 0) return null;
+
+               segment = tailSegment(groupExpression);
+               if (segment == null) return null;
+            }
+            segments.add(segment);
+
+            prefix.setLength(0);
+            groupPrefix = null;
+            groupExpression = null;
+            group = false;
+            i++;
+         }
+         else if (c == '{')
+         {
+            if (group) return null;
+
+            int open = 0;
+            int end = i;
+            for (; end < length; end++)
+            {
+               char ch = value.charAt(end);
+               if (ch == '{') open++;
+               else if (ch == '}' && --open == 0) break;
+            }
+            if (end == length) return null;
+
+            String param = value.substring(i + 1, end);
+            int colon = param.indexOf(':');
+            if (colon != -1)
+            {
+               groupExpression = param.substring(colon + 1).trim();
+               if (TEMPLATE_PARAM_DEFAULT_REGEX.equals(groupExpression)) groupExpression = null;
+            }
+
+            group = true;
+            groupPrefix = prefix.toString();
+            prefix.setLength(0);
+            i = end + 1;
+         }
+         else
+         {
+            if (REGEX_META_CHARACTERS.indexOf(c) != -1) return null;
+
+            prefix.append(c);
+            i++;
+         }
+      }
+
+      return segments.toArray(new Segment[segments.size()]);
+   }
+
+   private static Segment tailSegment(String expression)
+   {
+      if (expression.length() < 2) return null;
+
+      char quantifier = expression.charAt(expression.length() - 1);
+      if (quantifier != '*' && quantifier != '+') return null;
+
+      String characters = expression.substring(0, expression.length() - 1);
+      if (!characters.equals("."))
+      {
+         if (characters.length() < 3 || characters.charAt(0) != '[' || characters.charAt(characters.length() - 1) != ']') return null;
+         if (characters.indexOf('[', 1) != -1 || characters.indexOf("&&") != -1) return null;
+      }
+
+      Pattern tail;
+      try
+      {
+         tail = Pattern.compile(characters + "*");
+      }
+      catch (PatternSyntaxException e)
+      {
+         return null;
+      }
+
+      return new Segment("", "", tail);
+   }
+
+   private static int minimumSegments(String value)
+   {
+      // Only slashes outside of template expressions are guaranteed to be part of the matched path
+      int segments = 1;
+      int open = 0;
+      for (int i = 0; i < value.length(); i++)
+      {
+         char c = value.charAt(i);
+         if (c == '{') open++;
+         else if (c == '}') open--;
+         else if (c == '/' && open == 0 && i > 0 && i < value.length() - 1) segments++;
+      }
+
+      return segments;
+   }
+
    private static final Pattern GROUP = Pattern.compile("[^\\\\]\\(");
 
    private static int groupCount(String regex)
@@ -184,6 +434,106 @@ public class PathElement
       return str.replace(openCurlyReplacement, '{').replace(closeCurlyReplacement, '}');
    }
 
+   /**
+    * Matches a path element against consecutive segments of an address. Calls to {@link #matches(int)} must be made
+    * with increasing end indexes, which allows templates spanning several segments to be matched in linear time.
+    */
+   public final class SegmentMatcher
+   {
+      private final PathAddress address;
+      private final int start;
+
+      // segment matching state
+      private int verified;
+      private boolean failed;
+
+      // regular expression fallback state
+      private StringBuilder path;
+      private int pathEnd;
+
+      private SegmentMatcher(PathAddress address, int start)
+      {
+         this.address = address;
+         this.start = start;
+         this.verified = start;
+         this.pathEnd = start;
+      }
+
+      /**
+       * @param end index (exclusive) of the last segment to match
+       * @return true if the path element matches the segments from start up to end.
+       */
+      public boolean matches(int end)
+      {
+         int count = end - start;
+         if (count < minimumSegments) return false;
+
+         if (segments == null)
+         {
+            if (path == null || end < pathEnd)
+            {
+               path = new StringBuilder();
+               pathEnd = start;
+            }
+            for (; pathEnd < end; pathEnd++)
+            {
+               if (pathEnd > start) path.append('/');
+               path.append(address.get(pathEnd));
+            }
+
+            return pattern.matcher(path).matches();
+         }
+
+         Segment last = segments[segments.length - 1];
+         int fixed = (last.tail == null) ? segments.length : segments.length - 1;
+         if (last.tail == null && count != fixed) return false;
+         if (last.tail != null && count > fixed + 1 && !last.spansSegments) return false;
+
+         if (end < verified)
+         {
+            verified = start;
+            failed = false;
+         }
+         for (; !failed && verified < end; verified++)
+         {
+            int index = verified - start;
+            Segment segment = segments[Math.min(index, segments.length - 1)];
+            failed = !segment.matches(address.get(verified));
+         }
+
+         return !failed;
+      }
+   }
+
+   private static final class Segment
+   {
+      private final String prefix;
+      private final String suffix;
+      private final Pattern tail;
+      private final boolean spansSegments;
+
+      /**
+       * @param prefix the literal prefix, or the whole literal segment when suffix is null
+       * @param suffix the literal suffix of a single template parameter segment, or null for a literal segment
+       * @param tail the pattern matching a single segment of a multi-segment tail
+       */
+      private Segment(String prefix, String suffix, Pattern tail)
+      {
+         this.prefix = prefix;
+         this.suffix = suffix;
+         this.tail = tail;
+         this.spansSegments = tail != null && tail.matcher("/").matches();
+      }
+
+      private boolean matches(String segment)
+      {
+         if (tail != null) return tail.matcher(segment).matches();
+         if (suffix == null) return prefix.equals(segment);
+
+         return segment.length() > prefix.length() + suffix.length() && segment.startsWith(prefix) && segment.endsWith(suffix);
+      }
+   }
+
    private static final class Group
    {
       private String name;
@@ -0,0 +1,127 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.core.api;
+
+import org.gatein.management.api.ManagedDescription;
+import org.gatein.management.api.ManagedResource;
+import org.gatein.management.api.PathAddress;
+import org.gatein.management.api.PathTemplateResolver;
+import org.gatein.management.api.operation.OperationHandler;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The result of resolving a {@link PathAddress} against the managed resource tree. It holds the target resource and the
+ * path template resolvers captured while resolving, so a request only has to walk the tree once. Since it does not
+ * reference the address it was resolved from, it can be reused for any address with the same path.
+ *
+ * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
+ * @version $Revision$
+ */
+public class ResolvedAddress
+{
+   private final ManagedResource resource;
+   private final List<PathTemplateResolver> resolvers;
+
+   public ResolvedAddress(ManagedResource resource, List<PathTemplateResolver> resolvers)
+   {
+      if (resource == null) throw new IllegalArgumentException("resource is null");
+
+      this.resource = resource;
+      this.resolvers = Collections.unmodifiableList(resolvers);
+   }
+
+   /**
+    * @return the managed resource the address resolved to.
+    */
+   public ManagedResource getResource()
+   {
+      return resource;
+   }
+
+   public ManagedDescription getResourceDescription()
+   {
+      return resource.getResourceDescription(PathAddress.EMPTY_ADDRESS);
+   }
+
+   public OperationHandler getOperationHandler(String operationName)
+   {
+      return resource.getOperationHandler(PathAddress.EMPTY_ADDRESS, operationName);
+   }
+
+   /**
+    * @return map of operation descriptions, including inherited operations, keyed by operation name.
+    */
+   public Map<String, ManagedDescription> getOperationDescriptions()
+   {
+      return resource.getOperationDescriptions(PathAddress.EMPTY_ADDRESS);
+   }
+
+   public Set<String> getSubResourceNames()
+   {
+      return resource.getSubResourceNames(PathAddress.EMPTY_ADDRESS);
+   }
+
+   /**
+    * @return the captured path template resolvers, in the order they take precedence.
+    */
+   public List<PathTemplateResolver> getPathTemplateResolvers()
+   {
+      return resolvers;
+   }
+
+   /**
+    * Binds the captured path template resolvers to the address, so templates can be resolved through
+    * {@link PathAddress#resolvePathTemplate(String)}.
+    *
+    * @param address the address to bind the template resolvers to
+    * @return a view of the address carrying only the captured path template resolvers
+    */
+   public PathAddress bind(PathAddress address)
+   {
+      // The sub address drops any resolvers already carried by the address, which the captured ones supersede.
+      return address.subAddress(0).withPathTemplateResolvers(resolvers);
+   }
+
+   /**
+    * Resolves the address against the root resource. Resources not extending {@link AbstractManagedResource} are
+    * looked up through {@link ManagedResource#getSubResource(PathAddress)}, without any path template resolvers.
+    *
+    * @param root the root resource
+    * @param address the address of the resource
+    * @return the resolved address or null if no resource is registered for the address
+    */
+   public static ResolvedAddress resolve(ManagedResource root, PathAddress address)
+   {
+      if (root instanceof AbstractManagedResource)
+      {
+         return ((AbstractManagedResource) root).resolveAddress(address);
+      }
+
+      ManagedResource resource = root.getSubResource(address);
+      return (resource == null) ? null : new ResolvedAddress(resource, Collections.<PathTemplateResolver>emptyList());
+   }
+}
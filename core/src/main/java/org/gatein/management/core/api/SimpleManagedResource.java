@@ -27,18 +27,18 @@ import org.gatein.common.logging.LoggerFactory;
 import org.gatein.management.api.ManagedDescription;
 import org.gatein.management.api.ManagedResource;
 import org.gatein.management.api.PathAddress;
-import org.gatein.management.api.PathAddressIterator;
 import org.gatein.management.api.PathTemplateResolver;
 import org.gatein.management.api.exceptions.ManagementException;
 import org.gatein.management.api.operation.OperationHandler;
 
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.regex.PatternSyntaxException;
 
 /**
@@ -52,12 +52,21 @@ public class SimpleManagedResource extends AbstractManagedResource
    private volatile ConcurrentMap<String, SimpleManagedResource> children = new ConcurrentHashMap<String, SimpleManagedResource>();
    private volatile ConcurrentMap<String, OperationEntry> operations = new ConcurrentHashMap<String, OperationEntry>();
 
+   // Routing table compiled as children are registered. Single segment literal children are resolved with a hash lookup,
+   // everything else (templates and multi-segment paths) is matched in registration order.
+   private final ConcurrentMap<String, SimpleManagedResource> literalChildren = new ConcurrentHashMap<String, SimpleManagedResource>();
+   private final List<SimpleManagedResource> templateChildren = new CopyOnWriteArrayList<SimpleManagedResource>();
+
+   private volatile OperationTable operationTable;
+   private volatile boolean frozen;
+
    protected final ManagedDescription description;
 
    public SimpleManagedResource(PathElement pathElement, AbstractManagedResource parent, ManagedDescription description)
    {
       super(pathElement, parent);
       this.description = description;
+      this.operationTable = new OperationTable(operations, (parent == null) ? null : parent.getOperationTable());
    }
 
    //------------------------------- Registration Methods -------------------------------//
@@ -67,6 +76,7 @@ public class SimpleManagedResource extends AbstractManagedResource
    {
       if (name == null) throw new IllegalArgumentException("name is null");
       if (description == null) throw new IllegalArgumentException("description is null");
+      checkNotFrozen();
 
       if (name.charAt(0) == '/') name = name.substring(1, name.length());
 
@@ -86,6 +96,16 @@ public class SimpleManagedResource extends AbstractManagedResource
          throw new IllegalArgumentException("Resource " + name + " already exists for path " + getPath());
       }
 
+      if (!element.isTemplate() && element.getMinimumSegments() == 1)
+      {
+         literalChildren.put(element.getValue(), resource);
+      }
+      else
+      {
+         templateChildren.add(resource);
+      }
+      modified();
+
       return resource;
    }
 
@@ -98,120 +118,64 @@ public class SimpleManagedResource extends AbstractManagedResource
    @Override
    public void registerOperationHandler(String operationName, OperationHandler operationHandler, ManagedDescription description, boolean inherited)
    {
+      checkNotFrozen();
       if (operations.putIfAbsent(operationName, new OperationEntry(operationHandler, description, inherited)) != null)
       {
          throw new IllegalArgumentException("A handler is already registered for operation " + operationName + " at path " + getPath());
       }
+      updateOperationTable();
+      modified();
    }
 
-   //------------------------------- Resource Descriptions -------------------------------//
-
-   @Override
-   protected ManagedDescription getResourceDescription(PathAddressIterator iterator)
+   /**
+    * Freezes this resource and all of its sub-resources. Once frozen no resources or operation handlers can be
+    * registered, which makes the resource tree safe to share between requests without any locking.
+    */
+   public void freeze()
    {
-      if (iterator.hasNext())
-      {
-         String name = iterator.next();
-         AbstractManagedResource resource = findDescendant(iterator, name, new StringBuilder());
-
-         return (resource != null) ? resource.getResourceDescription(iterator) : null;
-      }
-      else
+      frozen = true;
+      for (SimpleManagedResource child : children.values())
       {
-         return description;
+         child.freeze();
       }
    }
 
-   //------------------------------- Operation information -------------------------------//
-
-   @Override
-   protected OperationEntry getOperationEntry(PathAddressIterator iterator, String operationName)
+   public boolean isFrozen()
    {
-      if (operationName == null) return null;
-      
-      OperationEntry entry = operations.get(operationName);
-      if (iterator.hasNext())
-      {
-         String name = iterator.next();
-         AbstractManagedResource resource = findDescendant(iterator, name, new StringBuilder());
+      return frozen;
+   }
 
-         return (resource != null) ? resource.getOperationEntry(iterator, operationName) : null;
-      }
-      else
-      {
-         if (entry == null)
-         {
-            AbstractManagedResource parent = this.parent;
-            while (parent != null)
-            {
-               OperationEntry parentEntry = parent.getOperationEntry(PathAddressIterator.EMPTY, operationName);
-               if (parentEntry != null && parentEntry.isInherited())
-               {
-                  entry = parentEntry;
-                  break;
-               }
-               parent = parent.parent;
-            }
-         }
+   //------------------------------- Resource Descriptions -------------------------------//
 
-         return entry;
-      }
+   @Override
+   protected ManagedDescription getResourceDescription()
+   {
+      return description;
    }
 
+   //------------------------------- Operation information -------------------------------//
+
    @Override
-   protected void getOperationEntries(PathAddressIterator iterator, Map<String, OperationEntry> entries)
+   protected OperationTable getOperationTable()
    {
-      if (iterator.hasNext())
-      {
-         String name = iterator.next();
-         AbstractManagedResource resource = findDescendant(iterator, name, new StringBuilder());
+      return operationTable;
+   }
 
-         if (resource != null)
-         {
-            resource.getOperationEntries(iterator, entries);
-         }
-      }
-      else
+   private void updateOperationTable()
+   {
+      operationTable = new OperationTable(operations, (parent == null) ? null : parent.getOperationTable());
+      for (SimpleManagedResource child : children.values())
       {
-         for (Map.Entry<String, OperationEntry> entry : operations.entrySet())
-         {
-            entries.put(entry.getKey(), entry.getValue());
-         }
-
-         AbstractManagedResource parent = this.parent;
-         while (parent != null)
-         {
-            Map<String, OperationEntry> parentMap = new HashMap<String, OperationEntry>();
-            parent.getOperationEntries(PathAddress.empty().iterator(), parentMap);
-            for (Map.Entry<String, OperationEntry> entry : parentMap.entrySet())
-            {
-               if (entry.getValue().isInherited() && !entries.containsKey(entry.getKey()))
-               {
-                  entries.put(entry.getKey(), entry.getValue());
-               }
-            }
-            
-            parent = parent.parent;
-         }
+         child.updateOperationTable();
       }
    }
-   
+
    //------------------------------- SubResource information -------------------------------//
 
    @Override
-   protected AbstractManagedResource getSubResource(PathAddressIterator iterator)
+   protected AbstractManagedResource resolve(PathAddress address, List<PathTemplateResolver> resolvers)
    {
-      if (iterator.hasNext())
-      {
-         String name = iterator.next();
-         AbstractManagedResource resource = findDescendant(iterator, name, new StringBuilder());
-
-         return (resource != null) ? resource.getSubResource(iterator) : null;
-      }
-      else
-      {
-         return this;
-      }
+      return resolve(address, 0, resolvers);
    }
 
    @Override
@@ -221,117 +185,95 @@ public class SimpleManagedResource extends AbstractManagedResource
    }
 
    @Override
-   protected Set<String> getChildNames(PathAddressIterator iterator)
+   protected Set<String> getChildNames()
    {
-      if (iterator.hasNext())
-      {
-         String name = iterator.next();
-         AbstractManagedResource resource = findDescendant(iterator, name, new StringBuilder());
-
-         return (resource == null) ? Collections.<String>emptySet() : resource.getChildNames(iterator);
-      }
-      else
-      {
-         return Collections.unmodifiableSet(new HashSet<String>(children.keySet()));
-      }
+      return Collections.unmodifiableSet(new HashSet<String>(children.keySet()));
    }
 
    //------------------------------- Private stuff -------------------------------//
 
-   private AbstractManagedResource findDescendant(PathAddressIterator iterator, String childName, StringBuilder path)
+   /**
+    * Resolves the address in one left to right pass over its segments. Literal children are looked up directly, and only
+    * when no literal child exists are the template children, in registration order, matched against the segments
+    * starting at {@code index}.
+    * Template resolvers of the resources matched along the way are collected in {@code resolvers}, and removed again if
+    * the remainder of the address could not be resolved from the matched resource.
+    */
+   private SimpleManagedResource resolve(PathAddress address, int index, List<PathTemplateResolver> resolvers)
    {
-      AbstractManagedResource child = children.get(childName);
+      int size = address.size();
+      if (index == size) return this;
 
-      while (child == null)
+      SimpleManagedResource child = literalChildren.get(address.get(index));
+      if (child != null)
       {
-         path.append("/").append(childName);
-         child = findMatch(iterator, path);
-         if (iterator.hasNext())
+         return child.resolve(address, index + 1, resolvers);
+      }
+
+      for (SimpleManagedResource resource : templateChildren)
+      {
+         PathElement element = resource.pathElement;
+         PathElement.SegmentMatcher matcher = element.matcher(address, index);
+
+         int limit = (int) Math.min((long) size, (long) index + element.getMaximumSegments());
+         int end = index + element.getMinimumSegments();
+         while (end <= limit && !matcher.matches(end))
+         {
+            end++;
+         }
+         if (end > limit) continue;
+
+         // Consume as many segments as the template allows, stopping at segments the resource itself can route to.
+         while (end < limit && !resource.routes(address.get(end)) && matcher.matches(end + 1))
          {
-            child = findDescendant(iterator, iterator.next(), path);
+            end++;
          }
-         else
+
+         int mark = resolvers.size();
+         resolvers.add(new PathTemplateResolverImpl(element.capture(address, index, end)));
+
+         SimpleManagedResource found = resource.resolve(address, end, resolvers);
+         if (found != null) return found;
+
+         while (resolvers.size() > mark)
          {
-            break;
+            resolvers.remove(resolvers.size() - 1);
          }
       }
 
-      return child;
+      return null;
    }
 
-   private AbstractManagedResource findMatch(PathAddressIterator iterator, final StringBuilder path)
+   private void checkNotFrozen()
    {
-      for (final SimpleManagedResource resource : children.values())
+      if (frozen) throw new IllegalStateException("Resource at path '" + getPath() + "' is frozen and can no longer be modified.");
+   }
+
+   private boolean routes(String segment)
+   {
+      if (literalChildren.containsKey(segment)) return true;
+
+      for (SimpleManagedResource resource : templateChildren)
       {
-         if (resource.pathElement.matches(path.toString()))
-         {
-            PathAddressIterator pai = new PathAddressIterator(iterator.currentAddress());
-            StringBuilder sb = new StringBuilder(path);
-            while (pai.hasNext())
-            {
-               String next = pai.next();
-               sb.append("/").append(next);
-               if (resource.pathElement.matches(sb.toString()))
-               {
-                  AbstractManagedResource found = resource.findMatch(pai, new StringBuilder(next));
-                  if (found == null)
-                  {
-                     path.append("/").append(next);
-                     iterator.next();
-                  }
-                  else
-                  {
-                     break;
-                  }
-               }
-               else
-               {
-                  break;
-               }
-            }
-
-            iterator.originalAddress().addPathTemplateResolver(
-               new PathTemplateResolverImpl(resource.pathElement, path.toString()));
-            
-            if (iterator.hasNext())
-            {
-               pai = new PathAddressIterator(iterator.currentAddress().copy());
-               AbstractManagedResource subResource = resource.getSubResource(pai);
-               if (subResource != null)
-               {
-                  PathAddress address = pai.originalAddress();
-                  for (PathTemplateResolver resolver : address.getPathTemplateResolvers())
-                  {
-                     iterator.originalAddress().addPathTemplateResolver(resolver);
-                  }
-                  while(iterator.hasNext()) iterator.next();
-                  return subResource;
-               }
-            }
-            else
-            {
-               return resource;
-            }
-         }
+         if (resource.pathElement.matchesSegment(segment)) return true;
       }
 
-      return null;
+      return false;
    }
 
    private static class PathTemplateResolverImpl implements PathTemplateResolver
    {
-      private PathElement pathElement;
-      private String path;
+      private final Map<String, String> values;
 
-      public PathTemplateResolverImpl(PathElement pathElement, String path)
+      public PathTemplateResolverImpl(Map<String, String> values)
       {
-         this.pathElement = pathElement;
-         this.path = path;
+         this.values = values;
       }
+
       @Override
       public String resolve(String templateName)
       {
-         return pathElement.resolve(templateName, path);
+         return values.get(templateName);
       }
    }
 }
@@ -22,21 +22,29 @@
 
 package org.gatein.management.core.api.binding;
 
+import org.gatein.common.logging.Logger;
+import org.gatein.common.logging.LoggerFactory;
 import org.gatein.management.api.ContentType;
 import org.gatein.management.api.binding.BindingException;
 import org.gatein.management.api.binding.BindingProvider;
 import org.gatein.management.api.binding.Marshaller;
 import org.gatein.management.api.model.ModelValue;
 import org.gatein.management.api.operation.model.ExportResourceModel;
+import org.gatein.management.api.operation.model.ImportResourceModel;
 import org.gatein.management.api.operation.model.NoResultModel;
 import org.gatein.management.api.operation.model.ReadResourceModel;
 import org.gatein.management.core.api.binding.json.ModelValueMarshaller;
 import org.gatein.management.core.api.binding.json.ReadResourceModelMarshaller;
 import org.gatein.management.core.api.binding.zip.ExportResourceModelMarshaller;
+import org.gatein.management.core.api.binding.zip.ImportResourceModelMarshaller;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
@@ -46,10 +54,62 @@ import java.io.OutputStream;
  */
 public class GlobalBindingProvider implements BindingProvider
 {
-   private static final Marshaller<ExportResourceModel> EXPORT_RESOURCE_MARSHALLER = new ExportResourceModelMarshaller();
+   private static final Logger log = LoggerFactory.getLogger(GlobalBindingProvider.class);
+
+   /**
+    * System property for the number of threads export tasks are exported with while writing an export archive. Tasks
+    * are exported on the thread writing the archive unless set to more than one thread.
+    */
+   public static final String EXPORT_THREADS_PROPERTY = "gatein.management.export.threads";
+
+   /**
+    * System property for the compression level of export archives, see
+    * {@link ExportResourceModelMarshaller#parseCompressionLevel(String)}.
+    */
+   public static final String EXPORT_COMPRESSION_PROPERTY = "gatein.management.export.compression";
+
+   /**
+    * System property for the size in bytes below which entries of export archives are stored uncompressed.
+    */
+   public static final String EXPORT_STORE_THRESHOLD_PROPERTY = "gatein.management.export.store-threshold";
+
+   /**
+    * System property to write export archives directly to the response as the tasks are exported, instead of spooling
+    * them first. Disabled by default, since a task failing then leaves a truncated archive after a successful status.
+    */
+   public static final String EXPORT_STREAM_PROPERTY = "gatein.management.export.stream";
+
+   /**
+    * System property for the maximum size in bytes of imports spooled to disk for random access, unlimited by default.
+    */
+   public static final String IMPORT_MAX_SIZE_PROPERTY = "gatein.management.import.max-size";
+
+   private static final Marshaller<ImportResourceModel> IMPORT_RESOURCE_MARSHALLER = new ImportResourceModelMarshaller(null,
+      Long.getLong(IMPORT_MAX_SIZE_PROPERTY, ImportResourceModelMarshaller.NO_LIMIT));
    private static final Marshaller<ReadResourceModel> JSON_READ_RESOURCE_MODEL_MARSHALLER = new ReadResourceModelMarshaller();
    private static final Marshaller<NoResultModel> NO_RESULT_MODEL_MARSHALLER = new NoOpMarshaller();
 
+   private final ExecutorService exportExecutor;
+   private final Marshaller<ExportResourceModel> exportResourceMarshaller;
+
+   public GlobalBindingProvider()
+   {
+      int threads = Integer.getInteger(EXPORT_THREADS_PROPERTY, 1);
+      exportExecutor = (threads <= 1) ? null : createExportExecutor(threads);
+      exportResourceMarshaller = createExportResourceMarshaller(exportExecutor, threads);
+   }
+
+   /**
+    * Shuts down the threads writing export archives, if any. Exports which are still being written are completed.
+    */
+   public void destroy()
+   {
+      if (exportExecutor != null)
+      {
+         exportExecutor.shutdown();
+      }
+   }
+
    @Override
    @SuppressWarnings("unchecked")
    public <T> Marshaller<T> getMarshaller(Class<T> type, ContentType contentType) throws BindingException
@@ -58,7 +118,11 @@ public class GlobalBindingProvider implements BindingProvider
 
       if (contentType == ContentType.ZIP && type == ExportResourceModel.class)
       {
-         return (Marshaller<T>) EXPORT_RESOURCE_MARSHALLER;
+         return (Marshaller<T>) exportResourceMarshaller;
+      }
+      else if (contentType == ContentType.ZIP && type == ImportResourceModel.class)
+      {
+         return (Marshaller<T>) IMPORT_RESOURCE_MARSHALLER;
       }
       else if (contentType == ContentType.JSON && type == ReadResourceModel.class)
       {
@@ -72,6 +136,63 @@ public class GlobalBindingProvider implements BindingProvider
       return null;
    }
 
+   private static Marshaller<ExportResourceModel> createExportResourceMarshaller(ExecutorService executor, int threads)
+   {
+      ExportResourceModelMarshaller marshaller;
+      if (executor == null)
+      {
+         marshaller = new ExportResourceModelMarshaller();
+      }
+      else
+      {
+         // Keep a few more tasks in flight than there are threads, so threads do not wait on the archive being written
+         marshaller = new ExportResourceModelMarshaller(null, executor, threads * 2);
+      }
+
+      marshaller.setStreaming(Boolean.getBoolean(EXPORT_STREAM_PROPERTY));
+
+      String compression = System.getProperty(EXPORT_COMPRESSION_PROPERTY);
+      if (compression != null)
+      {
+         try
+         {
+            marshaller.setCompressionLevel(ExportResourceModelMarshaller.parseCompressionLevel(compression));
+         }
+         catch (IllegalArgumentException e)
+         {
+            log.warn(e.getMessage() + " Ignoring system property " + EXPORT_COMPRESSION_PROPERTY + ", using the default compression level.");
+         }
+      }
+
+      int storeThreshold = Integer.getInteger(EXPORT_STORE_THRESHOLD_PROPERTY, 0);
+      if (storeThreshold < 0)
+      {
+         log.warn("Store threshold cannot be negative. Ignoring system property " + EXPORT_STORE_THRESHOLD_PROPERTY + ".");
+      }
+      else
+      {
+         marshaller.setStoreThreshold(storeThreshold);
+      }
+
+      return marshaller;
+   }
+
+   private static ExecutorService createExportExecutor(int threads)
+   {
+      return Executors.newFixedThreadPool(threads, new ThreadFactory()
+      {
+         private final AtomicInteger count = new AtomicInteger();
+
+         @Override
+         public Thread newThread(Runnable runnable)
+         {
+            Thread thread = new Thread(runnable, "gatein-management-export-writer-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+         }
+      });
+   }
+
    private static final class NoOpMarshaller implements Marshaller<NoResultModel>
    {
       @Override
@@ -24,18 +24,17 @@ package org.gatein.management.core.api.binding.json;
 
 import org.gatein.common.io.IOTools;
 import org.gatein.management.api.binding.BindingException;
+import org.gatein.management.api.binding.JsonStreamWriter;
 import org.gatein.management.api.binding.Marshaller;
 import org.gatein.management.api.operation.model.NamedDescription;
 import org.gatein.management.api.operation.model.ReadResourceModel;
 import org.json.JSONException;
 import org.json.JSONObject;
-import org.json.JSONStringer;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.PrintWriter;
 
 /**
  * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
@@ -46,47 +45,40 @@ public class ReadResourceModelMarshaller implements Marshaller<ReadResourceModel
    @Override
    public void marshal(ReadResourceModel model, OutputStream outputStream, boolean pretty) throws BindingException
    {
-      PrintWriter printWriter = new PrintWriter(outputStream);
+      JsonStreamWriter json = new JsonStreamWriter(outputStream, pretty);
+      boolean closed = false;
       try
       {
-         JSONStringer json = new JSONStringer();
-         json.object().key("description").value(model.getDescription());
-         json.key("children").array();
+         json.objectStart().key("description").value(model.getDescription());
+         json.key("children").arrayStart();
          for (String child : model.getChildren())
          {
-            json.object().key("name").value(child);
+            json.objectStart().key("name").value(child);
             NamedDescription nd = model.getChildDescription(child);
             if (nd != null)
             {
                json.key("description").value(nd.getDescription());
             }
-            json.endObject();
+            json.objectEnd();
          }
-         json.endArray().key("operations").array();
+         json.arrayEnd().key("operations").arrayStart();
          for (NamedDescription nd : model.getOperations())
          {
-            json.object().key("operation-name").value(nd.getName()).key("operation-description").value(nd.getDescription()).endObject();
+            json.objectStart().key("operation-name").value(nd.getName()).key("operation-description").value(nd.getDescription()).objectEnd();
          }
-         json.endArray().endObject();
+         json.arrayEnd().objectEnd();
 
-         JSONObject output = new JSONObject(json.toString());
-         if (pretty)
-         {
-            printWriter.write(output.toString(3));
-         }
-         else
-         {
-            printWriter.write(output.toString());
-         }
-         printWriter.flush();
+         // Closing the writer closes the stream, even if the buffered document cannot be written
+         closed = true;
+         json.close();
       }
-      catch (JSONException e)
+      catch (IOException e)
       {
          throw new BindingException("Could not marshal to JSON format", e);
       }
       finally
       {
-         IOTools.safeClose(printWriter);
+         if (!closed) IOTools.safeClose(outputStream);
       }
    }
 
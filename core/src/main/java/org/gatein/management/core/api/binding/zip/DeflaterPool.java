@@ -0,0 +1,73 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.core.api.binding.zip;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+/**
+ * Pool of raw (nowrap) deflaters, so writing an archive does not allocate and free native compression state for every
+ * export. Deflaters returned to a full pool are ended.
+ *
+ * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
+ * @version $Revision$
+ */
+class DeflaterPool
+{
+   private final ConcurrentLinkedQueue<Deflater> deflaters = new ConcurrentLinkedQueue<Deflater>();
+   private final AtomicInteger size = new AtomicInteger();
+   private final int maxSize;
+
+   DeflaterPool(int maxSize)
+   {
+      this.maxSize = maxSize;
+   }
+
+   Deflater acquire(int level)
+   {
+      Deflater deflater = deflaters.poll();
+      if (deflater == null)
+      {
+         return new Deflater(level, true);
+      }
+
+      size.decrementAndGet();
+      deflater.setLevel(level);
+      return deflater;
+   }
+
+   void release(Deflater deflater)
+   {
+      deflater.reset();
+      if (size.incrementAndGet() <= maxSize)
+      {
+         deflaters.offer(deflater);
+      }
+      else
+      {
+         size.decrementAndGet();
+         deflater.end();
+      }
+   }
+}
@@ -25,63 +25,284 @@ package org.gatein.management.core.api.binding.zip;
 import org.gatein.common.io.IOTools;
 import org.gatein.management.api.binding.BindingException;
 import org.gatein.management.api.binding.Marshaller;
+import org.gatein.management.api.binding.SpoolDirectory;
 import org.gatein.management.api.operation.model.ExportResourceModel;
 import org.gatein.management.api.operation.model.ExportTask;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
 
 /**
+ * Writes the export tasks of an export as a zip archive. By default the archive is first written to a spool file, so
+ * nothing is written to the output stream unless every task was exported successfully. When streaming is enabled, see
+ * {@link #setStreaming(boolean)}, the archive is written directly to the output stream as the tasks are exported
+ * instead, and a task failing leaves a truncated archive on the output stream.
+ * <p>
+ * When created with an executor, tasks are exported concurrently into buffers, a bounded number of tasks ahead of the
+ * one being written, while the calling thread appends the buffers to the archive in the order of the tasks. Buffers
+ * larger than {@link #DEFAULT_BUFFER_THRESHOLD} are moved to a spool file. Tasks are still pulled from the model by the
+ * calling thread only, so export tasks must be thread safe but the model does not need to be.
+ * <p>
+ * Entries are deflated with the compression level of the model, or the level of the marshaller when the model has none.
+ * Level {@link Deflater#NO_COMPRESSION} stores all entries uncompressed, and entries smaller than the store threshold
+ * are stored uncompressed whatever the level, since compressing them costs more than it saves. Deflaters are pooled
+ * across exports.
+ * <p>
+ * When created with an executor, entries of at least {@link #DEFAULT_PARALLEL_DEFLATE_THRESHOLD} bytes are also
+ * deflated in blocks compressed concurrently, on JVMs whose deflaters support it (Java 7 and newer).
+ *
  * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
  * @version $Revision$
  */
 public class ExportResourceModelMarshaller implements Marshaller<ExportResourceModel>
 {
+   /**
+    * Number of bytes of a task buffered in memory before the buffer is moved to a spool file.
+    */
+   public static final int DEFAULT_BUFFER_THRESHOLD = 256 * 1024;
+
+   /**
+    * Size in bytes of entries from which entries are deflated in parallel blocks.
+    */
+   public static final int DEFAULT_PARALLEL_DEFLATE_THRESHOLD = 1024 * 1024;
+
+   private static final DeflaterPool DEFLATERS = new DeflaterPool(2 * Runtime.getRuntime().availableProcessors());
+
+   private final SpoolDirectory spoolDirectory;
+   private final ExecutorService executor;
+   private final int parallelism;
+   private final int bufferThreshold;
+   private final ParallelDeflater parallelDeflater;
+   private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+   private int storeThreshold;
+   private int parallelDeflateThreshold = DEFAULT_PARALLEL_DEFLATE_THRESHOLD;
+   private boolean streaming;
+
+   public ExportResourceModelMarshaller()
+   {
+      this(null);
+   }
+
+   /**
+    * @param spoolDirectory directory to spool the archive to before writing it to the output stream, or null for the
+    * {@link SpoolDirectory#getDefault() default} spool directory.
+    */
+   public ExportResourceModelMarshaller(SpoolDirectory spoolDirectory)
+   {
+      this(spoolDirectory, null, 1);
+   }
+
+   /**
+    * @param spoolDirectory directory to spool the archive to before writing it to the output stream, or null for the
+    * {@link SpoolDirectory#getDefault() default} spool directory.
+    * @param executor executor to export tasks with, or null to export tasks on the calling thread.
+    * @param parallelism maximum number of tasks exported ahead of the task being written to the archive.
+    */
+   public ExportResourceModelMarshaller(SpoolDirectory spoolDirectory, ExecutorService executor, int parallelism)
+   {
+      this(spoolDirectory, executor, parallelism, DEFAULT_BUFFER_THRESHOLD);
+   }
+
+   ExportResourceModelMarshaller(SpoolDirectory spoolDirectory, ExecutorService executor, int parallelism, int bufferThreshold)
+   {
+      if (executor != null && parallelism < 1) throw new IllegalArgumentException("parallelism must be at least 1");
+
+      this.spoolDirectory = spoolDirectory;
+      this.executor = executor;
+      this.parallelism = parallelism;
+      this.bufferThreshold = bufferThreshold;
+      this.parallelDeflater = (executor != null && ParallelDeflater.isAvailable()) ? new ParallelDeflater(executor, DEFLATERS, parallelism) : null;
+   }
+
+   /**
+    * Parses a compression level, either a deflate level from 0 to 9, or one of <tt>default</tt>, <tt>stored</tt>
+    * (level 0), <tt>fastest</tt> (level 1) and <tt>best</tt> (level 9).
+    *
+    * @param value the compression level to parse
+    * @return the compression level
+    * @throws IllegalArgumentException if the value is not a valid compression level
+    */
+   public static int parseCompressionLevel(String value)
+   {
+      String level = value.trim();
+      if (level.equalsIgnoreCase("default")) return Deflater.DEFAULT_COMPRESSION;
+      if (level.equalsIgnoreCase("stored")) return Deflater.NO_COMPRESSION;
+      if (level.equalsIgnoreCase("fastest")) return Deflater.BEST_SPEED;
+      if (level.equalsIgnoreCase("best")) return Deflater.BEST_COMPRESSION;
+
+      try
+      {
+         return checkCompressionLevel(Integer.parseInt(level));
+      }
+      catch (NumberFormatException e)
+      {
+         throw new IllegalArgumentException("Invalid compression level '" + value + "'. Expected default, stored, fastest, best or a level from 0 to 9.");
+      }
+   }
+
+   /**
+    * @param compressionLevel the compression level of models which do not have one, {@link Deflater#DEFAULT_COMPRESSION}
+    * by default.
+    */
+   public void setCompressionLevel(int compressionLevel)
+   {
+      this.compressionLevel = checkCompressionLevel(compressionLevel);
+   }
+
+   /**
+    * @param storeThreshold size in bytes below which entries are stored uncompressed, 0 (never) by default.
+    */
+   public void setStoreThreshold(int storeThreshold)
+   {
+      if (storeThreshold < 0) throw new IllegalArgumentException("storeThreshold cannot be negative");
+
+      this.storeThreshold = storeThreshold;
+   }
+
+   /**
+    * @param parallelDeflateThreshold size in bytes from which entries are deflated in parallel blocks, when the
+    * marshaller was created with an executor.
+    */
+   public void setParallelDeflateThreshold(int parallelDeflateThreshold)
+   {
+      if (parallelDeflateThreshold < 0) throw new IllegalArgumentException("parallelDeflateThreshold cannot be negative");
+
+      this.parallelDeflateThreshold = parallelDeflateThreshold;
+   }
+
+   private static int checkCompressionLevel(int level)
+   {
+      if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION)
+      {
+         throw new IllegalArgumentException("Invalid compression level " + level + ". Expected a level from 0 to 9.");
+      }
+
+      return level;
+   }
+
+   /**
+    * @param streaming true to write archives directly to the output stream instead of spooling them first, false by
+    * default. A failing task then leaves a truncated archive on the output stream, after the response status may have
+    * been sent.
+    */
+   public void setStreaming(boolean streaming)
+   {
+      this.streaming = streaming;
+   }
+
    @Override
    public void marshal(ExportResourceModel model, OutputStream outputStream, boolean pretty) throws BindingException
    {
-      File file;
-      ZipOutputStream zos = null;
+      if (streaming)
+      {
+         writeZip(model, outputStream);
+         return;
+      }
+
+      SpoolDirectory.SpoolFile file;
       try
       {
-         file = File.createTempFile("gatein-export", ".zip");
-         zos = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+         file = getBufferDirectory().createFile(".zip");
       }
       catch (IOException e)
       {
-         throw new BindingException("Could not create temp file for export.", e);
+         throw new BindingException("Could not create spool file for export.", e);
       }
 
       try
       {
-         if (model.getTasks().isEmpty())
+         OutputStream spool;
+         try
          {
-            zos.putNextEntry(new ZipEntry(""));
+            spool = file.getOutputStream();
          }
-         else
+         catch (IOException e)
+         {
+            throw new BindingException("Could not open spool file " + file.getFile() + " for export.", e);
+         }
+         writeZip(model, spool);
+         IOTools.safeClose(spool);
+
+         InputStream inputStream = null;
+         try
+         {
+            inputStream = file.getInputStream();
+            IOTools.copy(inputStream, outputStream);
+         }
+         catch (IOException e)
+         {
+            throw new BindingException("IOException writing data to final output stream.", e);
+         }
+         finally
+         {
+            IOTools.safeClose(inputStream);
+         }
+      }
+      finally
+      {
+         file.close();
+      }
+   }
+
+   private void writeZip(ExportResourceModel model, OutputStream outputStream) throws BindingException
+   {
+      int level = (model.getCompressionLevel() == null) ? compressionLevel : model.getCompressionLevel();
+
+      // Closing the output stream is up to the caller.
+      ZipWriter zip = new ZipWriter(new BufferedOutputStream(outputStream), DEFLATERS);
+      try
+      {
+         // Tasks are pulled one at a time, so lazily produced tasks are exported as soon as they are available.
+         Iterator<ExportTask> tasks = model.iterator();
+         if (!tasks.hasNext())
          {
-            for (ExportTask task : model.getTasks())
+            zip.putDeflatedEntry("", level);
+         }
+         else if (executor == null)
+         {
+            EntryStream entry = new EntryStream(zip, level);
+            while (tasks.hasNext())
             {
-               String entry = task.getEntry();
-               zos.putNextEntry(new ZipEntry(entry));
+               ExportTask task = tasks.next();
+               if (level == Deflater.NO_COMPRESSION)
+               {
+                  TaskBuffer buffer = new TaskBuffer(getBufferDirectory(), bufferThreshold);
+                  try
+                  {
+                     task.export(buffer);
+                     zip.putStoredEntry(task.getEntry(), buffer);
+                  }
+                  finally
+                  {
+                     buffer.release();
+                  }
+               }
+               else
+               {
+                  entry.start(task.getEntry());
 
-               // Call export task responsible for writing the data.
-               task.export(zos);
+                  // Call export task responsible for writing the data.
+                  task.export(entry);
 
-               zos.closeEntry();
+                  entry.finish();
+               }
             }
          }
-         zos.flush();
-         zos.finish();
+         else
+         {
+            writeEntries(tasks, zip, level);
+         }
+         zip.finish();
       }
       catch (Throwable t)
       {
@@ -89,27 +310,171 @@ public class ExportResourceModelMarshaller implements Marshaller<ExportResourceM
       }
       finally
       {
-         IOTools.safeClose(zos);
+         zip.abort();
       }
+   }
 
+   private void writeEntries(Iterator<ExportTask> tasks, ZipWriter zip, int level) throws Exception
+   {
+      SpoolDirectory bufferDirectory = getBufferDirectory();
+      Deque<BufferedTask> pending = new ArrayDeque<BufferedTask>(parallelism);
       try
       {
-         InputStream inputStream = new BufferedInputStream(new FileInputStream(file));
-         IOTools.copy(inputStream, outputStream);
-      }
-      catch (FileNotFoundException e)
-      {
-         throw new BindingException("Could not read from temporary zip file " + file, e);
+         while (true)
+         {
+            while (pending.size() < parallelism && tasks.hasNext())
+            {
+               BufferedTask task = new BufferedTask(tasks.next(), new TaskBuffer(bufferDirectory, bufferThreshold));
+               task.future = executor.submit(task);
+               pending.add(task);
+            }
+            if (pending.isEmpty()) break;
+
+            BufferedTask task = pending.peek();
+            try
+            {
+               task.future.get();
+            }
+            catch (ExecutionException e)
+            {
+               Throwable cause = e.getCause();
+               if (cause instanceof Exception) throw (Exception) cause;
+               if (cause instanceof Error) throw (Error) cause;
+
+               throw e;
+            }
+
+            String entry = task.task.getEntry();
+            if (level == Deflater.NO_COMPRESSION || task.buffer.size() < storeThreshold)
+            {
+               zip.putStoredEntry(entry, task.buffer);
+            }
+            else if (parallelDeflater != null && task.buffer.size() >= parallelDeflateThreshold)
+            {
+               InputStream data = task.buffer.getInputStream();
+               try
+               {
+                  parallelDeflater.deflate(data, level, zip.putCompressedEntry(entry));
+               }
+               finally
+               {
+                  IOTools.safeClose(data);
+               }
+               zip.closeCompressedEntry(task.buffer.getCrc(), task.buffer.size());
+            }
+            else
+            {
+               task.buffer.writeTo(zip.putDeflatedEntry(entry, level));
+               zip.closeEntry();
+            }
+
+            pending.remove();
+            task.buffer.release();
+         }
       }
-      catch (IOException e)
+      finally
       {
-         throw new BindingException("IOException writing data to final output stream.", e);
+         for (BufferedTask task : pending)
+         {
+            task.future.cancel(true);
+            task.buffer.release();
+         }
       }
    }
 
+   private SpoolDirectory getBufferDirectory()
+   {
+      return (spoolDirectory == null) ? SpoolDirectory.getDefault() : spoolDirectory;
+   }
+
    @Override
    public ExportResourceModel unmarshal(InputStream inputStream) throws BindingException
    {
       throw new UnsupportedOperationException();
    }
+
+   private static class BufferedTask implements Callable<Void>
+   {
+      private final ExportTask task;
+      private final TaskBuffer buffer;
+      private Future<Void> future;
+
+      private BufferedTask(ExportTask task, TaskBuffer buffer)
+      {
+         this.task = task;
+         this.buffer = buffer;
+      }
+
+      @Override
+      public Void call() throws Exception
+      {
+         task.export(buffer);
+         buffer.flush();
+         return null;
+      }
+   }
+
+   /**
+    * Stream of the entry being exported. The data of an entry is held back until it reaches the store threshold, so
+    * entries below the threshold can be stored uncompressed.
+    */
+   private class EntryStream extends OutputStream
+   {
+      private final ZipWriter zip;
+      private final int level;
+      private final byte[] buffer;
+      private String name;
+      private int count;
+      private OutputStream deflated;
+
+      private EntryStream(ZipWriter zip, int level)
+      {
+         this.zip = zip;
+         this.level = level;
+         this.buffer = new byte[storeThreshold];
+      }
+
+      private void start(String name)
+      {
+         this.name = name;
+         this.count = 0;
+         this.deflated = null;
+      }
+
+      @Override
+      public void write(int b) throws IOException
+      {
+         write(new byte[]{(byte) b}, 0, 1);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException
+      {
+         if (deflated == null)
+         {
+            if (count + len < buffer.length)
+            {
+               System.arraycopy(b, off, buffer, count, len);
+               count += len;
+               return;
+            }
+
+            deflated = zip.putDeflatedEntry(name, level);
+            deflated.write(buffer, 0, count);
+         }
+         deflated.write(b, off, len);
+      }
+
+      private void finish() throws IOException
+      {
+         if (deflated == null && buffer.length > 0)
+         {
+            zip.putStoredEntry(name, buffer, count);
+            return;
+         }
+
+         if (deflated == null) zip.putDeflatedEntry(name, level);
+         zip.closeEntry();
+      }
+   }
 }
@@ -0,0 +1,399 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.core.api.binding.zip;
+
+import org.gatein.common.io.IOTools;
+import org.gatein.management.api.binding.BindingException;
+import org.gatein.management.api.binding.Marshaller;
+import org.gatein.management.api.binding.SpoolDirectory;
+import org.gatein.management.api.operation.model.ImportResourceModel;
+import org.gatein.management.api.operation.model.ImportTask;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Reads a zip archive as an {@link ImportResourceModel}. Nothing is read until the model is used. Importing the
+ * entries sequentially streams the archive one entry at a time, so the archive is never held in memory. Random access
+ * to the entries first spools the archive to a file of a {@link SpoolDirectory}, at most {@link #getMaxSize()} bytes
+ * long, which is read as a {@link ZipFile}.
+ *
+ * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
+ * @version $Revision$
+ */
+public class ImportResourceModelMarshaller implements Marshaller<ImportResourceModel>
+{
+   public static final long NO_LIMIT = -1;
+
+   private final SpoolDirectory spoolDirectory;
+   private final long maxSize;
+
+   public ImportResourceModelMarshaller()
+   {
+      this(null, NO_LIMIT);
+   }
+
+   /**
+    * @param spoolDirectory directory to spool archives to, or null for the default spool directory.
+    * @param maxSize maximum size in bytes of a spooled archive, or {@link #NO_LIMIT}
+    */
+   public ImportResourceModelMarshaller(SpoolDirectory spoolDirectory, long maxSize)
+   {
+      if (maxSize < 0 && maxSize != NO_LIMIT) throw new IllegalArgumentException("maxSize cannot be negative");
+
+      this.spoolDirectory = spoolDirectory;
+      this.maxSize = maxSize;
+   }
+
+   public long getMaxSize()
+   {
+      return maxSize;
+   }
+
+   @Override
+   public void marshal(ImportResourceModel object, OutputStream outputStream, boolean pretty) throws BindingException
+   {
+      throw new UnsupportedOperationException();
+   }
+
+   @Override
+   public ImportResourceModel unmarshal(InputStream inputStream) throws BindingException
+   {
+      return new ZipImportResourceModel(inputStream);
+   }
+
+   private class ZipImportResourceModel extends ImportResourceModel
+   {
+      private InputStream inputStream;
+      private SpoolDirectory.SpoolFile file;
+      private ZipFile zipFile;
+      private boolean imported;
+
+      private ZipImportResourceModel(InputStream inputStream)
+      {
+         this.inputStream = inputStream;
+      }
+
+      @Override
+      public List<String> importEntries() throws IOException
+      {
+         if (zipFile != null) return importEntries(null);
+
+         checkNotImported();
+         imported = true;
+
+         List<String> skipped = new ArrayList<String>();
+         ZipInputStream zis = new ZipInputStream(inputStream);
+         inputStream = null;
+         try
+         {
+            // Tasks read the entry from the archive stream directly, they must not be able to close it.
+            InputStream entryStream = new FilterInputStream(zis)
+            {
+               @Override
+               public void close() throws IOException
+               {
+               }
+            };
+
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null)
+            {
+               String name = entry.getName();
+               if (entry.isDirectory() || name.length() == 0) continue;
+
+               ImportTask task = getTask(name);
+               if (task == null)
+               {
+                  skipped.add(name);
+               }
+               else
+               {
+                  task.importEntry(name, entryStream);
+               }
+               zis.closeEntry();
+            }
+         }
+         finally
+         {
+            zis.close();
+         }
+
+         return skipped;
+      }
+
+      @Override
+      public List<String> importEntries(ExecutorService executor) throws IOException
+      {
+         spool();
+         checkNotImported();
+         imported = true;
+
+         List<String> skipped = new ArrayList<String>();
+         List<Future<Void>> futures = new ArrayList<Future<Void>>();
+         ImportGuard guard = new ImportGuard();
+         try
+         {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements())
+            {
+               ZipEntry entry = entries.nextElement();
+               String name = entry.getName();
+               if (entry.isDirectory() || name.length() == 0) continue;
+
+               ImportTask task = getTask(name);
+               if (task == null)
+               {
+                  skipped.add(name);
+               }
+               else if (executor == null)
+               {
+                  new EntryImport(task, zipFile, entry, guard).call();
+               }
+               else
+               {
+                  futures.add(executor.submit(new EntryImport(task, zipFile, entry, guard)));
+               }
+            }
+
+            for (Future<Void> future : futures)
+            {
+               future.get();
+            }
+         }
+         catch (ExecutionException e)
+         {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+
+            throw new IOException("Exception importing entries.", cause);
+         }
+         catch (InterruptedException e)
+         {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import was interrupted.", e);
+         }
+         finally
+         {
+            for (Future<Void> future : futures)
+            {
+               future.cancel(true);
+            }
+
+            // A cancelled task may still be reading its entry, the archive can only be closed once it is done.
+            guard.closeAndWait();
+            close();
+         }
+
+         return skipped;
+      }
+
+      @Override
+      public List<String> getEntries() throws IOException
+      {
+         spool();
+
+         List<String> names = new ArrayList<String>();
+         Enumeration<? extends ZipEntry> entries = zipFile.entries();
+         while (entries.hasMoreElements())
+         {
+            ZipEntry entry = entries.nextElement();
+            if (!entry.isDirectory() && entry.getName().length() > 0) names.add(entry.getName());
+         }
+         return names;
+      }
+
+      @Override
+      public InputStream getInputStream(String entry) throws IOException
+      {
+         spool();
+
+         ZipEntry zipEntry = zipFile.getEntry(entry);
+         return (zipEntry == null) ? null : zipFile.getInputStream(zipEntry);
+      }
+
+      @Override
+      public synchronized void close()
+      {
+         if (zipFile != null)
+         {
+            try
+            {
+               zipFile.close();
+            }
+            catch (IOException ignore)
+            {
+            }
+            zipFile = null;
+         }
+         if (file != null)
+         {
+            file.close();
+            file = null;
+         }
+         imported = true;
+         inputStream = null;
+      }
+
+      private void checkNotImported()
+      {
+         if (imported) throw new IllegalStateException("Entries have already been imported.");
+      }
+
+      private synchronized void spool() throws IOException
+      {
+         if (zipFile != null) return;
+         checkNotImported();
+
+         SpoolDirectory directory = (spoolDirectory == null) ? SpoolDirectory.getDefault() : spoolDirectory;
+         file = directory.createFile(".zip");
+         try
+         {
+            OutputStream out = file.getOutputStream();
+            try
+            {
+               byte[] buffer = new byte[8192];
+               int read;
+               while ((read = inputStream.read(buffer)) != -1)
+               {
+                  if (maxSize != NO_LIMIT && file.length() + read > maxSize)
+                  {
+                     throw new IOException("Import exceeds the maximum size of " + maxSize + " bytes.");
+                  }
+                  out.write(buffer, 0, read);
+               }
+            }
+            finally
+            {
+               IOTools.safeClose(out);
+            }
+            inputStream = null;
+
+            zipFile = new ZipFile(file.getFile());
+         }
+         catch (IOException e)
+         {
+            close();
+            throw e;
+         }
+      }
+   }
+
+   private static class EntryImport implements Callable<Void>
+   {
+      private final ImportTask task;
+      private final ZipFile zipFile;
+      private final ZipEntry entry;
+      private final ImportGuard guard;
+
+      private EntryImport(ImportTask task, ZipFile zipFile, ZipEntry entry, ImportGuard guard)
+      {
+         this.task = task;
+         this.zipFile = zipFile;
+         this.entry = entry;
+         this.guard = guard;
+      }
+
+      @Override
+      public Void call() throws IOException
+      {
+         // The import was aborted before this entry started
+         if (!guard.enter()) return null;
+
+         try
+         {
+            InputStream inputStream = zipFile.getInputStream(entry);
+            try
+            {
+               task.importEntry(entry.getName(), inputStream);
+            }
+            finally
+            {
+               IOTools.safeClose(inputStream);
+            }
+         }
+         finally
+         {
+            guard.exit();
+         }
+         return null;
+      }
+   }
+
+   /**
+    * Keeps track of the entry imports reading from the archive. Once closed no new entry import starts, and
+    * {@link #closeAndWait()} returns once the entry imports already running are done.
+    */
+   private static class ImportGuard
+   {
+      private int running;
+      private boolean closed;
+
+      private synchronized boolean enter()
+      {
+         if (closed) return false;
+
+         running++;
+         return true;
+      }
+
+      private synchronized void exit()
+      {
+         running--;
+         notifyAll();
+      }
+
+      private synchronized void closeAndWait()
+      {
+         closed = true;
+         boolean interrupted = false;
+         while (running > 0)
+         {
+            try
+            {
+               wait();
+            }
+            catch (InterruptedException e)
+            {
+               interrupted = true;
+            }
+         }
+
+         if (interrupted) Thread.currentThread().interrupt();
+      }
+   }
+}
@@ -0,0 +1,229 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.core.api.binding.zip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+
+/**
+ * Deflates data in blocks compressed concurrently, the way pigz does. Every block is primed with the last 32KB of the
+ * previous block as dictionary, and all but the last block end with a sync flush, so the compressed blocks concatenate
+ * into a single raw deflate stream. This needs the flush modes of Java 7 deflaters, see {@link #isAvailable()}.
+ *
+ * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
+ * @version $Revision$
+ */
+class ParallelDeflater
+{
+   static final int BLOCK_SIZE = 128 * 1024;
+
+   private static final int DICTIONARY_SIZE = 32 * 1024;
+
+   // Deflater.SYNC_FLUSH, which does not exist before Java 7
+   private static final int SYNC_FLUSH = 2;
+
+   private static final Method DEFLATE;
+
+   static
+   {
+      Method deflate;
+      try
+      {
+         deflate = Deflater.class.getMethod("deflate", byte[].class, int.class, int.class, int.class);
+      }
+      catch (NoSuchMethodException e)
+      {
+         deflate = null;
+      }
+      DEFLATE = deflate;
+   }
+
+   /**
+    * @return true if deflaters of this JVM can flush, which parallel deflate relies on.
+    */
+   static boolean isAvailable()
+   {
+      return DEFLATE != null;
+   }
+
+   private final ExecutorService executor;
+   private final DeflaterPool deflaters;
+   private final int parallelism;
+
+   /**
+    * @param parallelism maximum number of blocks compressed, or compressed and waiting to be written, at once.
+    */
+   ParallelDeflater(ExecutorService executor, DeflaterPool deflaters, int parallelism)
+   {
+      if (!isAvailable()) throw new IllegalStateException("Parallel deflate requires Java 7 or newer.");
+
+      this.executor = executor;
+      this.deflaters = deflaters;
+      this.parallelism = parallelism;
+   }
+
+   /**
+    * Reads the input stream to the end, and writes its content as raw deflate data to the output stream.
+    */
+   void deflate(InputStream in, int level, OutputStream out) throws Exception
+   {
+      Deque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>(parallelism);
+      try
+      {
+         byte[] dictionary = null;
+         byte[] block = read(in);
+
+         // Even empty data needs a final block
+         if (block == null) block = new byte[0];
+         while (block != null)
+         {
+            byte[] next = read(in);
+            if (pending.size() == parallelism)
+            {
+               out.write(get(pending.remove()));
+            }
+            pending.add(executor.submit(new Block(block, dictionary, level, next == null)));
+
+            dictionary = Arrays.copyOfRange(block, Math.max(0, block.length - DICTIONARY_SIZE), block.length);
+            block = next;
+         }
+
+         while (!pending.isEmpty())
+         {
+            out.write(get(pending.remove()));
+         }
+      }
+      finally
+      {
+         for (Future<byte[]> future : pending)
+         {
+            future.cancel(true);
+         }
+      }
+   }
+
+   /**
+    * @return the next block of the stream, or null at the end of the stream.
+    */
+   private byte[] read(InputStream in) throws IOException
+   {
+      byte[] block = new byte[BLOCK_SIZE];
+      int length = 0;
+      int read;
+      while (length < BLOCK_SIZE && (read = in.read(block, length, BLOCK_SIZE - length)) != -1)
+      {
+         length += read;
+      }
+
+      if (length == 0) return null;
+
+      return (length == BLOCK_SIZE) ? block : Arrays.copyOf(block, length);
+   }
+
+   private static byte[] get(Future<byte[]> future) throws Exception
+   {
+      try
+      {
+         return future.get();
+      }
+      catch (ExecutionException e)
+      {
+         Throwable cause = e.getCause();
+         if (cause instanceof Exception) throw (Exception) cause;
+         if (cause instanceof Error) throw (Error) cause;
+
+         throw e;
+      }
+   }
+
+   private class Block implements Callable<byte[]>
+   {
+      private final byte[] data;
+      private final byte[] dictionary;
+      private final int level;
+      private final boolean last;
+
+      private Block(byte[] data, byte[] dictionary, int level, boolean last)
+      {
+         this.data = data;
+         this.dictionary = dictionary;
+         this.level = level;
+         this.last = last;
+      }
+
+      @Override
+      public byte[] call() throws Exception
+      {
+         ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+         byte[] buffer = new byte[8192];
+         Deflater deflater = deflaters.acquire(level);
+         try
+         {
+            if (dictionary != null) deflater.setDictionary(dictionary);
+
+            deflater.setInput(data);
+            if (last)
+            {
+               deflater.finish();
+               while (!deflater.finished())
+               {
+                  out.write(buffer, 0, deflater.deflate(buffer));
+               }
+            }
+            else
+            {
+               // A sync flush ends the block on a byte boundary, the output is complete once it does not fill the buffer
+               int length;
+               do
+               {
+                  length = (Integer) DEFLATE.invoke(deflater, buffer, 0, buffer.length, SYNC_FLUSH);
+                  out.write(buffer, 0, length);
+               }
+               while (length == buffer.length);
+            }
+         }
+         catch (InvocationTargetException e)
+         {
+            throw new IOException("Could not deflate block.", e.getCause());
+         }
+         finally
+         {
+            deflaters.release(deflater);
+         }
+
+         return out.toByteArray();
+      }
+   }
+}
@@ -0,0 +1,187 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.core.api.binding.zip;
+
+import org.gatein.common.io.IOTools;
+import org.gatein.management.api.binding.SpoolDirectory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Holds the data of an export task exported ahead of being written to the archive. Data is kept in memory up to a
+ * threshold, past which all of it is moved to a spool file.
+ *
+ * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
+ * @version $Revision$
+ */
+class TaskBuffer extends OutputStream
+{
+   private final SpoolDirectory spoolDirectory;
+   private final int threshold;
+   private final CRC32 crc = new CRC32();
+   private byte[] buffer = new byte[512];
+   private int count;
+   private SpoolDirectory.SpoolFile file;
+   private OutputStream fileStream;
+   private boolean released;
+   private long size;
+
+   TaskBuffer(SpoolDirectory spoolDirectory, int threshold)
+   {
+      this.spoolDirectory = spoolDirectory;
+      this.threshold = threshold;
+   }
+
+   @Override
+   public void write(int b) throws IOException
+   {
+      write(new byte[]{(byte) b}, 0, 1);
+   }
+
+   @Override
+   public synchronized void write(byte[] b, int off, int len) throws IOException
+   {
+      if (released) throw new IOException("Buffer has been released.");
+
+      crc.update(b, off, len);
+      size += len;
+      if (fileStream == null && count + len > threshold)
+      {
+         spill();
+      }
+
+      if (fileStream != null)
+      {
+         fileStream.write(b, off, len);
+      }
+      else
+      {
+         if (count + len > buffer.length)
+         {
+            buffer = Arrays.copyOf(buffer, Math.min(threshold, Math.max(buffer.length << 1, count + len)));
+         }
+         System.arraycopy(b, off, buffer, count, len);
+         count += len;
+      }
+   }
+
+   /**
+    * @return the number of bytes written to the buffer.
+    */
+   synchronized long size()
+   {
+      return size;
+   }
+
+   /**
+    * @return the CRC-32 of the data written to the buffer.
+    */
+   synchronized long getCrc()
+   {
+      return crc.getValue();
+   }
+
+   /**
+    * @return true if the data was moved to a spool file.
+    */
+   synchronized boolean isSpilled()
+   {
+      return file != null;
+   }
+
+   /**
+    * Writes the buffered data to the output stream.
+    */
+   synchronized void writeTo(OutputStream outputStream) throws IOException
+   {
+      if (released) throw new IOException("Buffer has been released.");
+
+      if (file == null)
+      {
+         outputStream.write(buffer, 0, count);
+         return;
+      }
+
+      InputStream inputStream = getInputStream();
+      try
+      {
+         IOTools.copy(inputStream, outputStream);
+      }
+      finally
+      {
+         IOTools.safeClose(inputStream);
+      }
+   }
+
+   /**
+    * @return a new stream reading the buffered data.
+    */
+   synchronized InputStream getInputStream() throws IOException
+   {
+      if (released) throw new IOException("Buffer has been released.");
+
+      if (file == null)
+      {
+         return new ByteArrayInputStream(buffer, 0, count);
+      }
+
+      fileStream.flush();
+      return file.getInputStream();
+   }
+
+   /**
+    * Releases the memory or spool file held by this buffer. Writing to the buffer fails afterwards.
+    */
+   synchronized void release()
+   {
+      released = true;
+      buffer = null;
+      if (file != null)
+      {
+         file.close();
+      }
+   }
+
+   private void spill() throws IOException
+   {
+      file = spoolDirectory.createFile(".tmp");
+      try
+      {
+         fileStream = new BufferedOutputStream(file.getOutputStream());
+         fileStream.write(buffer, 0, count);
+      }
+      catch (IOException e)
+      {
+         file.close();
+         throw e;
+      }
+      buffer = null;
+      count = 0;
+   }
+}
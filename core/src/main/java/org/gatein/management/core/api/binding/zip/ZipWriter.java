@@ -0,0 +1,500 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.core.api.binding.zip;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Minimal zip archive writer. Unlike {@link java.util.zip.ZipOutputStream} it compresses with deflaters from a
+ * {@link DeflaterPool}, chooses the compression of every entry separately, and can write entries which are already
+ * compressed, for example by a {@link ParallelDeflater}.
+ * <p/>
+ * Like {@link java.util.zip.ZipOutputStream}, zip64 extensions are only written when needed: zip64 extra fields for
+ * entries whose sizes or offset do not fit in 32 bits, a zip64 data descriptor for deflated entries larger than 4GB,
+ * and the zip64 end of central directory record when the archive has more than 65534 entries or is larger than 4GB.
+ *
+ * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
+ * @version $Revision$
+ */
+class ZipWriter
+{
+   private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+   private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+   private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+   private static final int END_SIGNATURE = 0x06054b50;
+   private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+   private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+   private static final int ZIP64_EXTRA_ID = 0x0001;
+
+   private static final int STORED = 0;
+   private static final int DEFLATED = 8;
+
+   private static final int FLAG_DATA_DESCRIPTOR = 0x08;
+   private static final int FLAG_UTF8 = 0x800;
+
+   private static final int VERSION = 20;
+   private static final int ZIP64_VERSION = 45;
+
+   /**
+    * Largest sizes and offsets, and number of entries, written without zip64 extensions.
+    */
+   static final long MAX_SIZE = 0xFFFFFFFFL;
+   static final int MAX_ENTRIES = 0xFFFF;
+
+   private final OutputStream out;
+   private final DeflaterPool deflaters;
+   private final List<Entry> entries = new ArrayList<Entry>();
+   private final byte[] header = new byte[56];
+   private long offset;
+   private DeflatingStream current;
+   private Entry compressed;
+
+   ZipWriter(OutputStream out, DeflaterPool deflaters)
+   {
+      this.out = out;
+      this.deflaters = deflaters;
+   }
+
+   /**
+    * Starts an entry compressed while it is written to the returned stream. The entry is complete once the stream is
+    * closed, or the next entry is started.
+    */
+   OutputStream putDeflatedEntry(String name, int level) throws IOException
+   {
+      closeEntry();
+
+      Entry entry = newEntry(name, DEFLATED, FLAG_DATA_DESCRIPTOR);
+      writeLocalHeader(entry);
+      current = new DeflatingStream(entry, deflaters.acquire(level));
+      return current;
+   }
+
+   /**
+    * Writes an uncompressed entry.
+    */
+   void putStoredEntry(String name, TaskBuffer data) throws IOException
+   {
+      closeEntry();
+
+      Entry entry = newEntry(name, STORED, 0);
+      entry.crc = data.getCrc();
+      entry.size = data.size();
+      entry.compressedSize = data.size();
+      writeLocalHeader(entry);
+      data.writeTo(new CountingStream());
+   }
+
+   /**
+    * Writes an uncompressed entry.
+    */
+   void putStoredEntry(String name, byte[] data, int length) throws IOException
+   {
+      closeEntry();
+
+      CRC32 crc = new CRC32();
+      crc.update(data, 0, length);
+
+      Entry entry = newEntry(name, STORED, 0);
+      entry.crc = crc.getValue();
+      entry.size = length;
+      entry.compressedSize = length;
+      writeLocalHeader(entry);
+      write(data, 0, length);
+   }
+
+   /**
+    * Starts an entry from raw deflate data written to the returned stream. The entry is complete once
+    * {@link #closeCompressedEntry(long, long)} is called.
+    */
+   OutputStream putCompressedEntry(String name) throws IOException
+   {
+      closeEntry();
+
+      compressed = newEntry(name, DEFLATED, FLAG_DATA_DESCRIPTOR);
+      writeLocalHeader(compressed);
+      compressed.compressedSize = offset;
+      return new CountingStream();
+   }
+
+   /**
+    * Completes the entry started with {@link #putCompressedEntry(String)}.
+    *
+    * @param crc the CRC-32 of the uncompressed data
+    * @param size the size of the uncompressed data
+    */
+   void closeCompressedEntry(long crc, long size) throws IOException
+   {
+      Entry entry = compressed;
+      compressed = null;
+      entry.crc = crc;
+      entry.size = size;
+      entry.compressedSize = offset - entry.compressedSize;
+      writeDataDescriptor(entry);
+   }
+
+   void closeEntry() throws IOException
+   {
+      if (current != null)
+      {
+         DeflatingStream stream = current;
+         current = null;
+         stream.finish();
+      }
+   }
+
+   /**
+    * Writes the central directory. Closing the underlying stream is up to the caller.
+    */
+   void finish() throws IOException
+   {
+      closeEntry();
+
+      long start = offset;
+      for (Entry entry : entries)
+      {
+         writeCentralHeader(entry);
+      }
+      long length = offset - start;
+
+      int count = entries.size();
+      if (count >= MAX_ENTRIES || length >= MAX_SIZE || start >= MAX_SIZE)
+      {
+         long end = offset;
+         putInt(header, 0, ZIP64_END_SIGNATURE);
+         putLong(header, 4, 44);
+         putShort(header, 12, ZIP64_VERSION);
+         putShort(header, 14, ZIP64_VERSION);
+         putInt(header, 16, 0);
+         putInt(header, 20, 0);
+         putLong(header, 24, count);
+         putLong(header, 32, count);
+         putLong(header, 40, length);
+         putLong(header, 48, start);
+         write(header, 0, 56);
+
+         putInt(header, 0, ZIP64_LOCATOR_SIGNATURE);
+         putInt(header, 4, 0);
+         putLong(header, 8, end);
+         putInt(header, 16, 1);
+         write(header, 0, 20);
+      }
+
+      putInt(header, 0, END_SIGNATURE);
+      putShort(header, 4, 0);
+      putShort(header, 6, 0);
+      putShort(header, 8, Math.min(count, MAX_ENTRIES));
+      putShort(header, 10, Math.min(count, MAX_ENTRIES));
+      putInt(header, 12, (int) Math.min(length, MAX_SIZE));
+      putInt(header, 16, (int) Math.min(start, MAX_SIZE));
+      putShort(header, 20, 0);
+      write(header, 0, 22);
+      out.flush();
+   }
+
+   /**
+    * Releases the deflater of an unfinished entry.
+    */
+   void abort()
+   {
+      if (current != null)
+      {
+         current.release();
+         current = null;
+      }
+   }
+
+   private Entry newEntry(String name, int method, int flags) throws IOException
+   {
+      Entry entry = new Entry();
+      entry.name = encode(name);
+      entry.method = method;
+      entry.flags = flags;
+      if (entry.name.length != name.length()) entry.flags |= FLAG_UTF8;
+      entry.time = dosTime(System.currentTimeMillis());
+      entry.offset = offset;
+
+      entries.add(entry);
+      return entry;
+   }
+
+   private void writeLocalHeader(Entry entry) throws IOException
+   {
+      // Sizes of entries followed by a data descriptor are unknown here, and written as 0 with a zip64 data descriptor
+      // when they turn out to be too large, like ZipOutputStream does.
+      boolean zip64 = entry.size >= MAX_SIZE || entry.compressedSize >= MAX_SIZE;
+
+      putInt(header, 0, LOCAL_HEADER_SIGNATURE);
+      putShort(header, 4, zip64 ? ZIP64_VERSION : VERSION);
+      putShort(header, 6, entry.flags);
+      putShort(header, 8, entry.method);
+      putInt(header, 10, entry.time);
+      putInt(header, 14, (int) entry.crc);
+      putInt(header, 18, zip64 ? (int) MAX_SIZE : (int) entry.compressedSize);
+      putInt(header, 22, zip64 ? (int) MAX_SIZE : (int) entry.size);
+      putShort(header, 26, entry.name.length);
+      putShort(header, 28, zip64 ? 20 : 0);
+      write(header, 0, 30);
+      write(entry.name, 0, entry.name.length);
+
+      if (zip64)
+      {
+         putShort(header, 0, ZIP64_EXTRA_ID);
+         putShort(header, 2, 16);
+         putLong(header, 4, entry.size);
+         putLong(header, 12, entry.compressedSize);
+         write(header, 0, 20);
+      }
+   }
+
+   private void writeDataDescriptor(Entry entry) throws IOException
+   {
+      putInt(header, 0, DATA_DESCRIPTOR_SIGNATURE);
+      putInt(header, 4, (int) entry.crc);
+      if (entry.size >= MAX_SIZE || entry.compressedSize >= MAX_SIZE)
+      {
+         putLong(header, 8, entry.compressedSize);
+         putLong(header, 16, entry.size);
+         write(header, 0, 24);
+      }
+      else
+      {
+         putInt(header, 8, (int) entry.compressedSize);
+         putInt(header, 12, (int) entry.size);
+         write(header, 0, 16);
+      }
+   }
+
+   private void writeCentralHeader(Entry entry) throws IOException
+   {
+      // The zip64 extra field holds the values which do not fit, in this order
+      int extra = 0;
+      if (entry.size >= MAX_SIZE) extra += 8;
+      if (entry.compressedSize >= MAX_SIZE) extra += 8;
+      if (entry.offset >= MAX_SIZE) extra += 8;
+
+      putInt(header, 0, CENTRAL_HEADER_SIGNATURE);
+      putShort(header, 4, (extra > 0) ? ZIP64_VERSION : VERSION);
+      putShort(header, 6, (extra > 0) ? ZIP64_VERSION : VERSION);
+      putShort(header, 8, entry.flags);
+      putShort(header, 10, entry.method);
+      putInt(header, 12, entry.time);
+      putInt(header, 16, (int) entry.crc);
+      putInt(header, 20, (int) Math.min(entry.compressedSize, MAX_SIZE));
+      putInt(header, 24, (int) Math.min(entry.size, MAX_SIZE));
+      putShort(header, 28, entry.name.length);
+      putShort(header, 30, (extra > 0) ? extra + 4 : 0);
+      putShort(header, 32, 0);
+      putShort(header, 34, 0);
+      putShort(header, 36, 0);
+      putInt(header, 38, 0);
+      putInt(header, 42, (int) Math.min(entry.offset, MAX_SIZE));
+      write(header, 0, 46);
+      write(entry.name, 0, entry.name.length);
+
+      if (extra > 0)
+      {
+         putShort(header, 0, ZIP64_EXTRA_ID);
+         putShort(header, 2, extra);
+         int off = 4;
+         if (entry.size >= MAX_SIZE)
+         {
+            putLong(header, off, entry.size);
+            off += 8;
+         }
+         if (entry.compressedSize >= MAX_SIZE)
+         {
+            putLong(header, off, entry.compressedSize);
+            off += 8;
+         }
+         if (entry.offset >= MAX_SIZE)
+         {
+            putLong(header, off, entry.offset);
+            off += 8;
+         }
+         write(header, 0, off);
+      }
+   }
+
+   private void write(byte[] b, int off, int len) throws IOException
+   {
+      out.write(b, off, len);
+      offset += len;
+   }
+
+   private static byte[] encode(String name) throws UnsupportedEncodingException
+   {
+      return name.getBytes("UTF-8");
+   }
+
+   private static int dosTime(long time)
+   {
+      Calendar calendar = Calendar.getInstance();
+      calendar.setTimeInMillis(time);
+      int year = calendar.get(Calendar.YEAR);
+      if (year < 1980) return (1 << 21) | (1 << 16);
+
+      return (year - 1980) << 25 | (calendar.get(Calendar.MONTH) + 1) << 21 | calendar.get(Calendar.DAY_OF_MONTH) << 16
+         | calendar.get(Calendar.HOUR_OF_DAY) << 11 | calendar.get(Calendar.MINUTE) << 5 | calendar.get(Calendar.SECOND) >> 1;
+   }
+
+   private static void putShort(byte[] b, int off, int value)
+   {
+      b[off] = (byte) value;
+      b[off + 1] = (byte) (value >>> 8);
+   }
+
+   private static void putInt(byte[] b, int off, int value)
+   {
+      b[off] = (byte) value;
+      b[off + 1] = (byte) (value >>> 8);
+      b[off + 2] = (byte) (value >>> 16);
+      b[off + 3] = (byte) (value >>> 24);
+   }
+
+   private static void putLong(byte[] b, int off, long value)
+   {
+      putInt(b, off, (int) value);
+      putInt(b, off + 4, (int) (value >>> 32));
+   }
+
+   private static class Entry
+   {
+      private byte[] name;
+      private int method;
+      private int flags;
+      private int time;
+      private long crc;
+      private long size;
+      private long compressedSize;
+      private long offset;
+   }
+
+   /**
+    * Writes straight to the archive, keeping track of the offset.
+    */
+   private class CountingStream extends OutputStream
+   {
+      @Override
+      public void write(int b) throws IOException
+      {
+         out.write(b);
+         offset++;
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException
+      {
+         ZipWriter.this.write(b, off, len);
+      }
+   }
+
+   private class DeflatingStream extends OutputStream
+   {
+      private final Entry entry;
+      private final CRC32 crc = new CRC32();
+      private final byte[] buffer = new byte[8192];
+      private Deflater deflater;
+      private long size;
+
+      private DeflatingStream(Entry entry, Deflater deflater)
+      {
+         this.entry = entry;
+         this.deflater = deflater;
+      }
+
+      @Override
+      public void write(int b) throws IOException
+      {
+         write(new byte[]{(byte) b}, 0, 1);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException
+      {
+         if (deflater == null) throw new IOException("Zip entry is closed.");
+         if (len == 0) return;
+
+         crc.update(b, off, len);
+         size += len;
+         deflater.setInput(b, off, len);
+         while (!deflater.needsInput())
+         {
+            deflate();
+         }
+      }
+
+      @Override
+      public void close() throws IOException
+      {
+         if (current == this) closeEntry();
+      }
+
+      private void finish() throws IOException
+      {
+         if (deflater == null) return;
+
+         try
+         {
+            deflater.finish();
+            while (!deflater.finished())
+            {
+               deflate();
+            }
+
+            entry.crc = crc.getValue();
+            entry.size = size;
+            entry.compressedSize = deflater.getBytesWritten();
+            writeDataDescriptor(entry);
+         }
+         finally
+         {
+            release();
+         }
+      }
+
+      private void deflate() throws IOException
+      {
+         int length = deflater.deflate(buffer, 0, buffer.length);
+         if (length > 0)
+         {
+            ZipWriter.this.write(buffer, 0, length);
+         }
+      }
+
+      private void release()
+      {
+         if (deflater != null)
+         {
+            deflaters.release(deflater);
+            deflater = null;
+         }
+      }
+   }
+}
@@ -0,0 +1,118 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.core.api.controller;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded LRU cache of authorization decisions keyed by user and role, shared across requests. Decisions expire after
+ * a fixed timeout so changes to the roles of a user are eventually picked up.
+ *
+ * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
+ * @version $Revision$
+ */
+class AuthorizationCache
+{
+   private final Map<Key, Decision> cache;
+   private final long timeout;
+
+   AuthorizationCache(final int maxSize, long timeout)
+   {
+      if (maxSize <= 0) throw new IllegalArgumentException("maxSize must be greater then zero");
+      if (timeout <= 0) throw new IllegalArgumentException("timeout must be greater then zero");
+
+      this.timeout = timeout;
+      this.cache = new LinkedHashMap<Key, Decision>(16, 0.75f, true)
+      {
+         @Override
+         protected boolean removeEldestEntry(Map.Entry<Key, Decision> eldest)
+         {
+            return size() > maxSize;
+         }
+      };
+   }
+
+   /**
+    * @return the cached decision, or null if there is none or it has expired.
+    */
+   synchronized Boolean get(String user, String role)
+   {
+      Key key = new Key(user, role);
+      Decision decision = cache.get(key);
+      if (decision == null) return null;
+
+      if (decision.expires - System.currentTimeMillis() <= 0)
+      {
+         cache.remove(key);
+         return null;
+      }
+
+      return decision.authorized;
+   }
+
+   synchronized void put(String user, String role, boolean authorized)
+   {
+      cache.put(new Key(user, role), new Decision(authorized, System.currentTimeMillis() + timeout));
+   }
+
+   private static class Decision
+   {
+      private final boolean authorized;
+      private final long expires;
+
+      private Decision(boolean authorized, long expires)
+      {
+         this.authorized = authorized;
+         this.expires = expires;
+      }
+   }
+
+   private static class Key
+   {
+      private final String user;
+      private final String role;
+
+      private Key(String user, String role)
+      {
+         this.user = user;
+         this.role = role;
+      }
+
+      @Override
+      public boolean equals(Object o)
+      {
+         if (this == o) return true;
+         if (!(o instanceof Key)) return false;
+
+         Key key = (Key) o;
+         return user.equals(key.user) && role.equals(key.role);
+      }
+
+      @Override
+      public int hashCode()
+      {
+         return 31 * user.hashCode() + role.hashCode();
+      }
+   }
+}
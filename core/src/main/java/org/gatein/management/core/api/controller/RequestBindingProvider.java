@@ -0,0 +1,110 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.core.api.controller;
+
+import org.gatein.common.logging.Logger;
+import org.gatein.common.logging.LoggerFactory;
+import org.gatein.management.api.ContentType;
+import org.gatein.management.api.binding.BindingException;
+import org.gatein.management.api.binding.BindingProvider;
+import org.gatein.management.api.binding.Marshaller;
+import org.gatein.management.api.operation.model.ImportResourceModel;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A binding provider for a single request which keeps track of the import models unmarshalled by operation handlers.
+ * An import model may hold a spool file and an open archive until its entries are imported, so the controller closes
+ * every model through {@link #close()} once the handler has completed, whether or not the handler imported the entries.
+ *
+ * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
+ * @version $Revision$
+ */
+class RequestBindingProvider implements BindingProvider
+{
+   private static final Logger log = LoggerFactory.getLogger(RequestBindingProvider.class);
+
+   private final BindingProvider delegate;
+   private final List<ImportResourceModel> imports = new ArrayList<ImportResourceModel>(1);
+
+   RequestBindingProvider(BindingProvider delegate)
+   {
+      this.delegate = delegate;
+   }
+
+   @Override
+   public <T> Marshaller<T> getMarshaller(Class<T> type, ContentType contentType) throws BindingException
+   {
+      final Marshaller<T> marshaller = delegate.getMarshaller(type, contentType);
+      if (marshaller == null || !ImportResourceModel.class.isAssignableFrom(type)) return marshaller;
+
+      return new Marshaller<T>()
+      {
+         @Override
+         public void marshal(T object, OutputStream outputStream, boolean pretty) throws BindingException
+         {
+            marshaller.marshal(object, outputStream, pretty);
+         }
+
+         @Override
+         public T unmarshal(InputStream inputStream) throws BindingException
+         {
+            T model = marshaller.unmarshal(inputStream);
+            if (model instanceof ImportResourceModel)
+            {
+               synchronized (imports)
+               {
+                  imports.add((ImportResourceModel) model);
+               }
+            }
+
+            return model;
+         }
+      };
+   }
+
+   /**
+    * Closes the import models unmarshalled through this binding provider.
+    */
+   void close()
+   {
+      synchronized (imports)
+      {
+         for (ImportResourceModel model : imports)
+         {
+            try
+            {
+               model.close();
+            }
+            catch (RuntimeException e)
+            {
+               log.error("Could not close import " + model, e);
+            }
+         }
+         imports.clear();
+      }
+   }
+}
@@ -0,0 +1,90 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.core.api.controller;
+
+import org.gatein.management.api.ExternalContext;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An external context for a single request which remembers the roles the user has been checked against, so role based
+ * authorization of the many operations a request can invoke (i.e. a recursive export) only asks the underlying
+ * external context once per role. Decisions can also be shared with later requests of the same user through an
+ * {@link AuthorizationCache}.
+ *
+ * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
+ * @version $Revision$
+ */
+class RequestExternalContext implements ExternalContext
+{
+   private final ExternalContext delegate;
+   private final AuthorizationCache cache;
+   private final ConcurrentMap<String, Boolean> roles = new ConcurrentHashMap<String, Boolean>(4);
+   private String user;
+   private boolean userResolved;
+
+   RequestExternalContext(ExternalContext delegate, AuthorizationCache cache)
+   {
+      this.delegate = delegate;
+      this.cache = cache;
+   }
+
+   @Override
+   public synchronized String getRemoteUser()
+   {
+      if (!userResolved)
+      {
+         user = delegate.getRemoteUser();
+         userResolved = true;
+      }
+
+      return user;
+   }
+
+   @Override
+   public boolean isUserInRole(String role)
+   {
+      Boolean authorized = roles.get(role);
+      if (authorized != null) return authorized;
+
+      // Anonymous decisions are only kept for the request, since there is no user to key them by.
+      String user = (cache == null) ? null : getRemoteUser();
+      if (user != null)
+      {
+         authorized = cache.get(user, role);
+      }
+
+      if (authorized == null)
+      {
+         authorized = delegate.isUserInRole(role);
+         if (user != null)
+         {
+            cache.put(user, role, authorized);
+         }
+      }
+
+      roles.put(role, authorized);
+      return authorized;
+   }
+}
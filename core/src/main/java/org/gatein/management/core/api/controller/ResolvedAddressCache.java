@@ -0,0 +1,86 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.core.api.controller;
+
+import org.gatein.management.api.ManagedResource;
+import org.gatein.management.api.PathAddress;
+import org.gatein.management.core.api.ResolvedAddress;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded LRU cache of resolved addresses keyed by address. The cache is bound to a root
+ * resource and its revision, and is cleared whenever either changes, i.e. when extensions are reloaded or resources are
+ * registered.
+ *
+ * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
+ * @version $Revision$
+ */
+class ResolvedAddressCache
+{
+   private final Map<PathAddress, ResolvedAddress> cache;
+   private ManagedResource root;
+   private long revision;
+
+   ResolvedAddressCache(final int maxSize)
+   {
+      if (maxSize <= 0) throw new IllegalArgumentException("maxSize must be greater then zero");
+
+      this.cache = new LinkedHashMap<PathAddress, ResolvedAddress>(16, 0.75f, true)
+      {
+         @Override
+         protected boolean removeEldestEntry(Map.Entry<PathAddress, ResolvedAddress> eldest)
+         {
+            return size() > maxSize;
+         }
+      };
+   }
+
+   synchronized ResolvedAddress get(ManagedResource root, long revision, PathAddress address)
+   {
+      if (this.root != root || this.revision != revision)
+      {
+         cache.clear();
+         this.root = root;
+         this.revision = revision;
+         return null;
+      }
+
+      return cache.get(address);
+   }
+
+   synchronized void put(ManagedResource root, long revision, PathAddress address, ResolvedAddress resolved)
+   {
+      if (this.root == root && this.revision == revision)
+      {
+         cache.put(address, resolved);
+      }
+   }
+
+   synchronized void clear()
+   {
+      cache.clear();
+      root = null;
+   }
+}
@@ -39,12 +39,18 @@ import org.gatein.management.api.exceptions.ResourceNotFoundException;
 import org.gatein.management.api.model.ModelProvider;
 import org.gatein.management.api.operation.OperationHandler;
 import org.gatein.management.api.operation.OperationNames;
+import org.gatein.management.api.operation.model.ExportResourceModel;
 import org.gatein.management.api.operation.model.NamedDescription;
 import org.gatein.management.api.operation.model.ReadResourceModel;
+import org.gatein.management.core.api.AbstractManagedResource;
+import org.gatein.management.core.api.ManagementServiceImpl;
+import org.gatein.management.core.api.ResolvedAddress;
 import org.gatein.management.core.api.model.DmrModelProvider;
 import org.gatein.management.core.api.operation.BasicResultHandler;
 import org.gatein.management.core.api.operation.OperationContextImpl;
 
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.Set;
 
@@ -56,28 +62,55 @@ import java.util.Set;
 public class SimpleManagementController implements ManagementController
 {
    private static final Logger log = LoggerFactory.getLogger(SimpleManagementController.class);
+   private static final int AUTHORIZATION_CACHE_SIZE = 1024;
 
    private final ManagementService managementService;
    private final RuntimeContext runtimeContext;
    private final ExternalContext externalContext;
-   private ManagedResource rootResource;
+   private final ResolvedAddressCache resolvedAddressCache;
+   private final AuthorizationCache authorizationCache;
 
    public SimpleManagementController(ManagementService managementService, RuntimeContext runtimeContext, ExternalContext externalContext)
    {
+      this(managementService, runtimeContext, externalContext, 0);
+   }
+
+   /**
+    * @param resolvedAddressCacheSize maximum number of resolved addresses reused across requests, or 0 to resolve the
+    * address of every request against the resource tree.
+    */
+   public SimpleManagementController(ManagementService managementService, RuntimeContext runtimeContext, ExternalContext externalContext, int resolvedAddressCacheSize)
+   {
+      this(managementService, runtimeContext, externalContext, resolvedAddressCacheSize, 0);
+   }
+
+   /**
+    * @param resolvedAddressCacheSize maximum number of resolved addresses reused across requests, or 0 to resolve the
+    * address of every request against the resource tree.
+    * @param authorizationCacheTimeout time in milliseconds a role check of a user is reused across requests, or 0 to
+    * only reuse role checks within a single request.
+    */
+   public SimpleManagementController(ManagementService managementService, RuntimeContext runtimeContext, ExternalContext externalContext, int resolvedAddressCacheSize, long authorizationCacheTimeout)
+   {
+      if (resolvedAddressCacheSize < 0) throw new IllegalArgumentException("resolvedAddressCacheSize cannot be negative");
+      if (authorizationCacheTimeout < 0) throw new IllegalArgumentException("authorizationCacheTimeout cannot be negative");
+
       this.managementService = managementService;
       this.runtimeContext = runtimeContext;
       this.externalContext = externalContext;
+      this.resolvedAddressCache = (resolvedAddressCacheSize == 0) ? null : new ResolvedAddressCache(resolvedAddressCacheSize);
+      this.authorizationCache = (authorizationCacheTimeout == 0) ? null : new AuthorizationCache(AUTHORIZATION_CACHE_SIZE, authorizationCacheTimeout);
    }
 
    @Override
    @SuppressWarnings("deprecation")
    public ManagedResponse execute(ManagedRequest request) throws ResourceNotFoundException, OperationException
    {
-      // Simple way to reload extensions. NOTE: ManagementServiceImpl is not thread safe, so this should be used with caution.
+      // Simple way to reload extensions. Requests already running finish against the resources they started with.
       if (request.getAttributes().containsKey("reload-extensions"))
       {
          managementService.reloadExtensions();
-         rootResource = managementService.getManagedResource(PathAddress.empty());
+         if (resolvedAddressCache != null) resolvedAddressCache.clear();
       }
 
       // TODO: Remove once READ_CONFIG_AS_XML is completely removed.
@@ -96,105 +129,160 @@ public class SimpleManagementController implements ManagementController
          log.debug("Executing request for operation " + operationName + " at address " + address);
       }
       
-      ManagedResource root = getRootResource();
-      if (root.getSubResource(address) == null)
+      // Obtain the root once, so the whole request runs against the same resources even if extensions are reloaded.
+      // Extensions replaced by a reload are not destroyed until the request releases them.
+      ManagementServiceImpl.Resources resources = null;
+      ManagedResource root;
+      if (managementService instanceof ManagementServiceImpl)
       {
-         throw new ResourceNotFoundException("Could not locate managed resource for address '" + address + "'");
+         resources = ((ManagementServiceImpl) managementService).acquire();
+         root = resources.getRootResource();
       }
-
-      OperationHandler operationHandler = root.getOperationHandler(address, operationName);
-      if (operationHandler != null)
+      else
       {
-         // Obtain binding provider given managed component.
-         String componentName = (address.size() >= 1) ? address.get(0) : null;
-         BindingProvider bindingProvider = managementService.getBindingProvider(componentName);
-
-         // ModelProvider to use for de-typed models
-         ModelProvider modelProvider = DmrModelProvider.INSTANCE;
-
-         // Execute operation for given registered operation handler
-         BasicResultHandler resultHandler = new BasicResultHandler();
-         operationHandler.execute(new OperationContextImpl(request, root, runtimeContext, externalContext, bindingProvider, modelProvider), resultHandler);
+         root = managementService.getManagedResource(PathAddress.EMPTY_ADDRESS);
+      }
 
-         if (resultHandler.getFailureDescription() != null)
-         {
-            return new FailureResponse(modelProvider.newModel().set(resultHandler.getFailureDescription()));
-         }
-         else if (resultHandler.getFailure() != null)
+      boolean release = true;
+      try
+      {
+         ResolvedAddress resolved = resolve(root, address);
+         if (resolved == null)
          {
-            return new FailureResponse(resultHandler.getFailure());
+            throw new ResourceNotFoundException("Could not locate managed resource for address '" + address + "'");
          }
-         else
+         address = resolved.bind(address);
+
+         OperationHandler operationHandler = resolved.getOperationHandler(operationName);
+         if (operationHandler != null)
          {
-            Object result = resultHandler.getResult();
+            // Obtain binding provider given managed component.
+            String componentName = (address.size() >= 1) ? address.get(0) : null;
+            BindingProvider bindingProvider = (resources == null) ? managementService.getBindingProvider(componentName) : resources.getBindingProvider(componentName);
+
+            // ModelProvider to use for de-typed models
+            ModelProvider modelProvider = DmrModelProvider.INSTANCE;
 
-            // Set descriptions based on the ManagedResource so 'dynamic' extensions don't have to.
-            if (result instanceof ReadResourceModel)
+            // Role checks are remembered for the duration of the request, since operations like export invoke many handlers.
+            ExternalContext requestContext = (externalContext == null) ? null : new RequestExternalContext(externalContext, authorizationCache);
+
+            // Execute operation for given registered operation handler. Imports the handler did not consume are closed.
+            BasicResultHandler resultHandler = new BasicResultHandler();
+            RequestBindingProvider requestBindingProvider = new RequestBindingProvider(bindingProvider);
+            try
             {
-               ReadResourceModel readResource = (ReadResourceModel) result;
-               if (!readResource.isChildDescriptionsSet())
-               {
-                  populateChildDescriptions(root, address, readResource);
-               }
+               operationHandler.execute(new OperationContextImpl(request, address, root, runtimeContext, requestContext, requestBindingProvider, modelProvider), resultHandler);
+            }
+            finally
+            {
+               requestBindingProvider.close();
+            }
+
+            if (resultHandler.getFailureDescription() != null)
+            {
+               return new FailureResponse(modelProvider.newModel().set(resultHandler.getFailureDescription()));
+            }
+            else if (resultHandler.getFailure() != null)
+            {
+               return new FailureResponse(resultHandler.getFailure());
+            }
+            else
+            {
+               Object result = resultHandler.getResult();
 
-               if (readResource.getOperations().isEmpty())
+               // Set descriptions based on the ManagedResource so 'dynamic' extensions don't have to.
+               if (result instanceof ReadResourceModel)
                {
-                  Map<String, ManagedDescription> descriptions = root.getOperationDescriptions(address);
-                  for (Map.Entry<String, ManagedDescription> desc : descriptions.entrySet())
+                  ReadResourceModel readResource = (ReadResourceModel) result;
+                  if (!readResource.isChildDescriptionsSet())
                   {
-                     readResource.addOperation(new NamedDescription(desc.getKey(), desc.getValue().getDescription()));
+                     populateChildDescriptions(root, resolved, address, readResource);
+                  }
+
+                  if (readResource.getOperations().isEmpty())
+                  {
+                     Map<String, ManagedDescription> descriptions = resolved.getOperationDescriptions();
+                     for (Map.Entry<String, ManagedDescription> desc : descriptions.entrySet())
+                     {
+                        readResource.addOperation(new NamedDescription(desc.getKey(), desc.getValue().getDescription()));
+                     }
                   }
                }
-            }
 
-            return new SuccessfulResponse<Object>(bindingProvider, result, request.getContentType());
+               // A lazy export still executes handlers while it is written, so the resources are released once it is written.
+               if (resources != null && result instanceof ExportResourceModel && ((ExportResourceModel) result).isLazy())
+               {
+                  release = false;
+                  return new SuccessfulResponse<Object>(bindingProvider, result, request.getContentType(), resources);
+               }
+
+               return new SuccessfulResponse<Object>(bindingProvider, result, request.getContentType());
+            }
+         }
+         else
+         {
+            // Why pass in operation name, if it's not used as part of the message...
+            throw new OperationException(operationName, "Operation '" + operationName  + "' not found for address '" + address + "'");
          }
       }
-      else
+      finally
       {
-         // Why pass in operation name, if it's not used as part of the message...
-         throw new OperationException(operationName, "Operation '" + operationName  + "' not found for address '" + address + "'");
+         if (release && resources != null) resources.release();
       }
    }
-   
-   private void populateChildDescriptions(ManagedResource root, PathAddress address, ReadResourceModel readResource)
+
+   private void populateChildDescriptions(ManagedResource root, ResolvedAddress resolved, PathAddress address, ReadResourceModel readResource)
    {
-      ManagedResource currentResource = root.getSubResource(address);
-      Set<String> subResourceNames = currentResource.getSubResourceNames(PathAddress.empty());
+      ManagedResource currentResource = resolved.getResource();
+      Set<String> subResourceNames = resolved.getSubResourceNames();
       
       // We have children but no sub resources which typically means that the same resource serves multiple paths like a navigation URI.
       if (!readResource.getChildren().isEmpty() && subResourceNames.isEmpty())
       {
          for (String childName : readResource.getChildren())
          {
-            readResource.setChildDescription(childName, currentResource.getResourceDescription(PathAddress.empty()).getDescription());
+            readResource.setChildDescription(childName, resolved.getResourceDescription().getDescription());
          }
       }
       else
       {
-         // Set children descriptions
+         Set<ManagedResource> subResources = Collections.newSetFromMap(new IdentityHashMap<ManagedResource, Boolean>());
          for (String subResourceName : subResourceNames)
          {
-            ManagedResource subResource = currentResource.getSubResource(subResourceName);
-            for (String childName : readResource.getChildren())
+            subResources.add(currentResource.getSubResource(subResourceName));
+         }
+
+         // Set children descriptions
+         for (String childName : readResource.getChildren())
+         {
+            ResolvedAddress child = resolve(root, address.append(childName));
+            if (child != null && (child.getResource() == currentResource || subResources.contains(child.getResource())))
             {
-               ManagedResource mr = root.getSubResource(address.append(childName));
-               if (mr == subResource || mr == currentResource)
-               {
-                  readResource.setChildDescription(childName, mr.getResourceDescription(PathAddress.empty()).getDescription());
-               }
+               readResource.setChildDescription(childName, child.getResourceDescription().getDescription());
             }
          }
       }
    }
 
-   private ManagedResource getRootResource()
+   private ResolvedAddress resolve(ManagedResource root, PathAddress address)
    {
-      if (rootResource == null)
+      if (resolvedAddressCache == null || !(root instanceof AbstractManagedResource))
       {
-         rootResource = managementService.getManagedResource(PathAddress.EMPTY_ADDRESS);
+         return ResolvedAddress.resolve(root, address);
+      }
+
+      AbstractManagedResource rootResource = (AbstractManagedResource) root;
+      long revision = rootResource.getRevision();
+      ResolvedAddress resolved = resolvedAddressCache.get(root, revision, address);
+      if (resolved == null)
+      {
+         resolved = rootResource.resolveAddress(address);
+         if (resolved != null)
+         {
+            resolvedAddressCache.put(root, revision, address, resolved);
+         }
       }
 
-      return rootResource;
+      return resolved;
    }
 }
@@ -26,7 +26,9 @@ import org.gatein.management.api.ContentType;
 import org.gatein.management.api.binding.BindingProvider;
 import org.gatein.management.api.binding.Marshaller;
 import org.gatein.management.api.controller.ManagedResponse;
+import org.gatein.management.core.api.ManagementServiceImpl;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Collection;
@@ -35,19 +37,29 @@ import java.util.Collection;
  * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
  * @version $Revision$
  */
-public class SuccessfulResponse<T> implements ManagedResponse
+public class SuccessfulResponse<T> implements ManagedResponse, Closeable
 {
    private final BindingProvider bindingProvider;
    private final T result;
    private final ContentType contentType;
+   private final ManagementServiceImpl.Resources resources;
 
    SuccessfulResponse(BindingProvider bindingProvider, T result, ContentType contentType)
+   {
+      this(bindingProvider, result, contentType, null);
+   }
+
+   /**
+    * @param resources resources the result needs until it is written, which are released once the result is written.
+    */
+   SuccessfulResponse(BindingProvider bindingProvider, T result, ContentType contentType, ManagementServiceImpl.Resources resources)
    {
       if (result == null) throw new IllegalArgumentException("result is null.");
 
       this.bindingProvider = bindingProvider;
       this.result = result;
       this.contentType = contentType;
+      this.resources = resources;
    }
 
    @Override
@@ -62,8 +74,29 @@ public class SuccessfulResponse<T> implements ManagedResponse
       return result;
    }
 
-   @SuppressWarnings("unchecked")
    public void writeResult(OutputStream outputStream, boolean pretty) throws IOException
+   {
+      try
+      {
+         write(outputStream, pretty);
+      }
+      finally
+      {
+         close();
+      }
+   }
+
+   /**
+    * Releases the resources the result needs until it is written, if any, for a response which is not written.
+    */
+   @Override
+   public void close()
+   {
+      if (resources != null) resources.release();
+   }
+
+   @SuppressWarnings("unchecked")
+   private void write(OutputStream outputStream, boolean pretty) throws IOException
    {
       if (bindingProvider == null) throw new IOException("Cannot write result because no binding provider was specified.");
 
@@ -26,13 +26,14 @@ import org.gatein.management.api.model.Model;
 import org.gatein.management.api.model.ModelList;
 import org.gatein.management.api.model.ModelValue;
 import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.ModelType;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.AbstractList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.RandomAccess;
 
 /**
  * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
@@ -47,8 +48,8 @@ class DmrModelList extends DmrModelValue implements ModelList
    @Override
    public ModelValue get(int index)
    {
-      int size = (isDefined()) ? value.asInt() : 0;
-      if (size <= index) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+      int size = size();
+      if (index < 0 || size <= index) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
 
       return asValue(value.get(index));
    }
@@ -114,19 +115,14 @@ class DmrModelList extends DmrModelValue implements ModelList
       return this;
    }
 
+   /**
+    * @return a read-only view of the values of this list, which reflects later changes to the list. Values are wrapped
+    * as they are accessed.
+    */
    @Override
    public List<ModelValue> getValues()
    {
-      if (!isDefined()) return Collections.emptyList();
-
-      List<ModelNode> list = value.asList();
-      List<ModelValue> values = new ArrayList<ModelValue>(list.size());
-      for (ModelNode value : list)
-      {
-         values.add(asValue(value));
-      }
-
-      return values;
+      return new Values();
    }
 
    @Override
@@ -145,6 +141,22 @@ class DmrModelList extends DmrModelValue implements ModelList
    @Override
    public int size()
    {
-      return getValues().size();
+      // The int value of a dmr list is its size
+      return (value.getType() == ModelType.LIST) ? value.asInt() : 0;
+   }
+
+   private class Values extends AbstractList<ModelValue> implements RandomAccess
+   {
+      @Override
+      public ModelValue get(int index)
+      {
+         return DmrModelList.this.get(index);
+      }
+
+      @Override
+      public int size()
+      {
+         return DmrModelList.this.size();
+      }
    }
 }
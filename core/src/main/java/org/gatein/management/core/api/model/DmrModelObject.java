@@ -63,53 +63,56 @@ class DmrModelObject extends DmrModelValue implements ModelObject
    @Override
    public <T extends ModelValue> T get(String name, Class<T> valueType)
    {
-      return get(name).asValue(valueType);
+      return asValue(value.get(name), valueType);
    }
 
    public ModelObject set(String name, String value)
    {
-      get(name).set(value);
+      ModelNode child = this.value.get(name);
+      if (value != null) child.set(value);
       return this;
    }
 
    public ModelObject set(String name, int value)
    {
-      get(name).set(value);
+      this.value.get(name).set(value);
       return this;
    }
 
    @Override
    public ModelObject set(String name, long value)
    {
-      get(name).set(value);
+      this.value.get(name).set(value);
       return this;
    }
 
    @Override
    public ModelObject set(String name, double value)
    {
-      get(name).set(value);
+      this.value.get(name).set(value);
       return this;
    }
 
    @Override
    public ModelObject set(String name, BigInteger value)
    {
-      get(name).set(value);
+      ModelNode child = this.value.get(name);
+      if (value != null) child.set(value);
       return this;
    }
 
    @Override
    public ModelObject set(String name, BigDecimal value)
    {
-      get(name).set(value);
+      ModelNode child = this.value.get(name);
+      if (value != null) child.set(value);
       return this;
    }
 
    @Override
    public ModelObject set(String name, boolean value)
    {
-      get(name).set(value);
+      this.value.get(name).set(value);
       return this;
    }
 
@@ -129,7 +132,7 @@ class DmrModelObject extends DmrModelValue implements ModelObject
    @Override
    public boolean hasDefined(String name)
    {
-      return has(name) && get(name).isDefined();
+      return value.hasDefined(name);
    }
 
    @Override
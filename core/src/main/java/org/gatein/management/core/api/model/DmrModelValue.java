@@ -22,6 +22,7 @@
 
 package org.gatein.management.core.api.model;
 
+import org.gatein.management.api.binding.Utf8Writer;
 import org.gatein.management.api.model.Model;
 import org.gatein.management.api.model.ModelBoolean;
 import org.gatein.management.api.model.ModelList;
@@ -45,6 +46,10 @@ public abstract class DmrModelValue implements ModelValue
 {
    final ModelNode value;
 
+   // Typed view returned by the last call to asValue, and the type of the node at the time
+   private ModelValue view;
+   private ModelValueType viewType;
+
    DmrModelValue(final ModelNode value)
    {
       this.value = value;
@@ -59,55 +64,64 @@ public abstract class DmrModelValue implements ModelValue
    @Override
    public <T extends ModelValue> T asValue(Class<T> valueType)
    {
-      if (valueType.isAssignableFrom(getClass()))
+      if (valueType.isInstance(this))
       {
          return valueType.cast(this);
       }
-      else if (getValueType() == ModelValueType.UNDEFINED)
+
+      // Reuse the view of the last cast as long as the type of the node has not changed since.
+      ModelValueType type = getValueType();
+      ModelValue view = this.view;
+      if (view != null && viewType == type && valueType.isInstance(view))
+      {
+         return valueType.cast(view);
+      }
+
+      if (type == ModelValueType.UNDEFINED)
       {
-         ModelValue mv;
          if (ModelReference.class.isAssignableFrom(valueType))
          {
-            mv = new DmrModelReference(value);
+            view = new DmrModelReference(value);
          }
          else if (ModelObject.class.isAssignableFrom(valueType))
          {
-            mv = new DmrModelObject(value);
+            view = new DmrModelObject(value);
          }
          else if (ModelList.class.isAssignableFrom(valueType))
          {
-            mv = new DmrModelList(value);
+            view = new DmrModelList(value);
          }
          else if (ModelString.class.isAssignableFrom(valueType))
          {
-            mv = new DmrModelString(value);
+            view = new DmrModelString(value);
          }
          else if (ModelNumber.class.isAssignableFrom(valueType))
          {
-            mv = new DmrModelNumber(value);
+            view = new DmrModelNumber(value);
          }
          else if (ModelBoolean.class.isAssignableFrom(valueType))
          {
-            mv = new DmrModelBoolean(value);
+            view = new DmrModelBoolean(value);
          }
          else
          {
             throw new IllegalArgumentException("No mapping defined for ModelValue type " + valueType);
          }
-
-         return valueType.cast(mv);
       }
       else
       {
-         ModelValue value = asValue(this.value);
-         try
-         {
-            return valueType.cast(value);
-         }
-         catch (ClassCastException e)
-         {
-            throw new IllegalArgumentException("ModelValue type is " + value.getValueType() + " and cannot be cast to " + valueType.getName());
-         }
+         view = asValue(value, type);
+      }
+
+      this.view = view;
+      this.viewType = type;
+      try
+      {
+         return valueType.cast(view);
+      }
+      catch (ClassCastException e)
+      {
+         throw new IllegalArgumentException("ModelValue type is " + type + " and cannot be cast to " + valueType.getName());
       }
    }
 
@@ -132,9 +146,21 @@ public abstract class DmrModelValue implements ModelValue
    }
 
    @Override
-   public void toJsonStream(OutputStream outputStream, boolean pretty)
+   public void toJsonStream(OutputStream outputStream, boolean pretty) throws IOException
    {
-      toJson(new PrintWriter(outputStream), pretty);
+      Utf8Writer utf8Writer = new Utf8Writer(outputStream);
+      try
+      {
+         PrintWriter writer = new PrintWriter(utf8Writer);
+         toJson(writer, pretty);
+
+         // PrintWriter swallows exceptions, so make sure the caller knows the output is incomplete.
+         if (writer.checkError()) throw new IOException("Could not write JSON to output stream.");
+      }
+      finally
+      {
+         utf8Writer.close();
+      }
    }
 
    private void toJson(PrintWriter writer, boolean pretty)
@@ -219,7 +245,26 @@ public abstract class DmrModelValue implements ModelValue
 
    static ModelValue asValue(ModelNode value)
    {
-      ModelValueType valueType = getValueType(value);
+      return asValue(value, getValueType(value));
+   }
+
+   /**
+    * Casts the node to the given type, without creating more than one wrapper if the node already has the requested type.
+    * Requesting a {@link Model} returns a wrapper which can change the type of the node.
+    */
+   static <T extends ModelValue> T asValue(ModelNode value, Class<T> valueType)
+   {
+      if (Model.class.isAssignableFrom(valueType))
+      {
+         return valueType.cast(new DmrModel(value));
+      }
+
+      ModelValue mv = asValue(value);
+      return (valueType.isInstance(mv)) ? valueType.cast(mv) : mv.asValue(valueType);
+   }
+
+   private static ModelValue asValue(ModelNode value, ModelValueType valueType)
+   {
       switch (valueType)
       {
          case LIST:
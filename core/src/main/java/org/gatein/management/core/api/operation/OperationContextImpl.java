@@ -49,6 +49,7 @@ import java.util.Locale;
 public class OperationContextImpl implements OperationContext
 {
    private final ManagedRequest request;
+   private final PathAddress address;
    private final ManagedResource resource;
    private final RuntimeContext runtimeContext;
    private final ExternalContext externalContext;
@@ -60,6 +61,14 @@ public class OperationContextImpl implements OperationContext
 
 
    public OperationContextImpl(final ManagedRequest request, final ManagedResource resource, final RuntimeContext runtimeContext, final ExternalContext externalContext, final BindingProvider bindingProvider, final ModelProvider modelProvider)
+   {
+      this(request, request.getAddress(), resource, runtimeContext, externalContext, bindingProvider, modelProvider);
+   }
+
+   /**
+    * @param address the address of the request, carrying the path template resolvers of the resolved resource
+    */
+   public OperationContextImpl(final ManagedRequest request, final PathAddress address, final ManagedResource resource, final RuntimeContext runtimeContext, final ExternalContext externalContext, final BindingProvider bindingProvider, final ModelProvider modelProvider)
    {
       Deque<OperationAttachment> list = new ArrayDeque<OperationAttachment>();
 
@@ -73,6 +82,7 @@ public class OperationContextImpl implements OperationContext
       });
 
       this.request = request;
+      this.address = address;
       this.resource = resource;
       this.runtimeContext = runtimeContext;
       this.externalContext = externalContext;
@@ -111,7 +121,7 @@ public class OperationContextImpl implements OperationContext
    @Override
    public PathAddress getAddress()
    {
-      return request.getAddress();
+      return address;
    }
 
    @Override
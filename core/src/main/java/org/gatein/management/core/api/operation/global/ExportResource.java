@@ -37,18 +37,53 @@ import org.gatein.management.api.operation.StepResultHandler;
 import org.gatein.management.api.operation.model.ExportResourceModel;
 import org.gatein.management.api.operation.model.ExportTask;
 import org.gatein.management.api.operation.model.ReadResourceModel;
+import org.gatein.management.core.api.ResolvedAddress;
+import org.gatein.management.core.api.binding.zip.ExportResourceModelMarshaller;
 import org.gatein.management.core.api.operation.BasicResultHandler;
 
 import java.text.ParseException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
+ * Exports all resources below the address which have an export operation handler registered.
+ * <p>
+ * By default the whole resource tree is walked before the operation completes, so a failure of any export operation
+ * handler is reported as a failure of the operation. Setting the {@value #PARALLEL_ATTRIBUTE} attribute to
+ * <tt>true</tt> (one thread per available processor) or to a number of threads exports sibling resources in parallel,
+ * in which case the export operation handlers must be thread safe.
+ * <p>
+ * Setting the {@value #STREAMING_ATTRIBUTE} attribute to <tt>true</tt> walks the resource tree lazily instead: the
+ * export operation handlers are executed as the returned model is iterated, i.e. while the export is being written, so
+ * tasks do not pile up in memory. Failures after the first task then surface while the export is written, after the
+ * operation has completed, so the caller only sees a truncated export. Streaming cannot be combined with parallel
+ * exports. Exported tasks are returned in the same order either way.
+ * <p>
+ * The {@value #COMPRESSION_ATTRIBUTE} attribute selects the compression of the export archive, see
+ * {@link ExportResourceModelMarshaller#parseCompressionLevel(String)}.
+ *
  * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
  * @version $Revision$
  */
 public class ExportResource extends QueryOperationHandler<ExportResourceModel>
 {
+   public static final String PARALLEL_ATTRIBUTE = "parallel";
+   public static final String COMPRESSION_ATTRIBUTE = "compression";
+   public static final String STREAMING_ATTRIBUTE = "streaming";
+
    @Override
    protected ExportResourceModel execute(OperationContext operationContext) throws ResourceNotFoundException, OperationException
    {
@@ -56,33 +91,51 @@ public class ExportResource extends QueryOperationHandler<ExportResourceModel>
       final PathAddress address = operationContext.getAddress();
       final String operationName = operationContext.getOperationName();
 
-      StepResultHandler<ExportResourceModel> exportResultHandler = new StepResultHandler<ExportResourceModel>(address)
-      {
-         @Override
-         public void failed(String failureDescription)
-         {
-            if (address.equals(getCurrentAddress()))
-            {
-               throw new OperationException(operationName, "Export operation failed. Reason: " + failureDescription);
-            }
-            else
-            {
-               throw new OperationException(operationName, "Export operation failed. Reason: " + failureDescription + " [Step Address: " + getCurrentAddress() + "]");
-            }
-         }
-      };
+      StepResultHandler<ExportResourceModel> exportResultHandler = new ExportResultHandler(address, address, operationName);
 
+      // Parse the filter once, the attributes are the same for every step of the export.
+      PathTemplateFilter filter;
       try
       {
-         executeHandlers(resource, operationContext, address, operationName, exportResultHandler);
+         filter = PathTemplateFilter.parse(operationContext.getAttributes().getValues("filter"));
+      }
+      catch (ParseException e)
+      {
+         throw new OperationException(operationName, "Could not parse filter attributes.", e);
       }
-      catch (OperationException e)
+
+      int parallelism = getParallelism(operationContext);
+      boolean streaming = Boolean.parseBoolean(operationContext.getAttributes().getValue(STREAMING_ATTRIBUTE));
+      if (streaming && parallelism > 1)
+      {
+         throw new OperationException(operationName, "Attribute " + STREAMING_ATTRIBUTE + " cannot be combined with attribute " + PARALLEL_ATTRIBUTE + ".");
+      }
+
+      Integer compressionLevel = getCompressionLevel(operationContext);
+      ResolvedAddress resolved = resolve(resource, address, operationName);
+      Export export = new Export(resource, address, filter, operationName, parallelism);
+      if (streaming)
+      {
+         Export.Tasks tasks = export.new Tasks(export.new Step(operationContext, resolved, address, exportResultHandler));
+
+         // Walk the tree up to the first task, so failures up to there are reported as failures of the operation
+         tasks.hasNext();
+         ExportResourceModel model = new ExportResourceModel(tasks);
+         model.setCompressionLevel(compressionLevel);
+         return model;
+      }
+
+      try
       {
-         throw new OperationException(e.getOperationName(), getStepMessage(e, address, exportResultHandler), e);
+         export.executeHandlers(operationContext, resolved, address, exportResultHandler);
       }
       catch (Throwable t)
       {
-         throw new OperationException(operationName, getStepMessage(t, address, exportResultHandler), t);
+         throw stepFailure(t, address, operationName, exportResultHandler);
+      }
+      finally
+      {
+         export.shutdown();
       }
 
       List<ExportTask> tasks = new ArrayList<ExportTask>();
@@ -90,39 +143,132 @@ public class ExportResource extends QueryOperationHandler<ExportResourceModel>
       {
          tasks.addAll(model.getTasks());
       }
-      return new ExportResourceModel(tasks);
+      ExportResourceModel model = new ExportResourceModel(tasks);
+      model.setCompressionLevel(compressionLevel);
+      return model;
    }
 
-   private void executeHandlers(ManagedResource resource, final OperationContext operationContext, PathAddress address, String operationName, StepResultHandler<ExportResourceModel> stepResultHandler)
+   private static int getParallelism(OperationContext operationContext)
    {
-      OperationHandler handler = resource.getOperationHandler(address, operationName);
-      if (handler != null && handler != this)
+      String value = operationContext.getAttributes().getValue(PARALLEL_ATTRIBUTE);
+      if (value == null || value.equalsIgnoreCase("false")) return 1;
+      if (value.equalsIgnoreCase("true")) return Runtime.getRuntime().availableProcessors();
+
+      try
       {
-         List<String> filterAttributes = operationContext.getAttributes().getValues("filter");
-         PathTemplateFilter filter;
-         try
-         {
-            filter = PathTemplateFilter.parse(filterAttributes);
-         }
-         catch (ParseException e)
+         int parallelism = Integer.parseInt(value.trim());
+         if (parallelism < 1) throw new NumberFormatException();
+
+         return parallelism;
+      }
+      catch (NumberFormatException e)
+      {
+         throw new OperationException(operationContext.getOperationName(), "Invalid value '" + value + "' for attribute " + PARALLEL_ATTRIBUTE + ". Expected true, false or a number of threads.");
+      }
+   }
+
+   private static Integer getCompressionLevel(OperationContext operationContext)
+   {
+      String value = operationContext.getAttributes().getValue(COMPRESSION_ATTRIBUTE);
+      if (value == null) return null;
+
+      try
+      {
+         return ExportResourceModelMarshaller.parseCompressionLevel(value);
+      }
+      catch (IllegalArgumentException e)
+      {
+         throw new OperationException(operationContext.getOperationName(), e.getMessage());
+      }
+   }
+
+   private static ResolvedAddress resolve(ManagedResource resource, PathAddress address, String operationName)
+   {
+      ResolvedAddress resolved = ResolvedAddress.resolve(resource, address);
+      if (resolved == null)
+      {
+         throw new OperationException(operationName, "Could not locate resource at address " + address);
+      }
+
+      return resolved;
+   }
+
+   private static OperationException stepFailure(Throwable t, PathAddress originalAddress, String operationName, StepResultHandler<ExportResourceModel> stepResultHandler)
+   {
+      if (t instanceof OperationException)
+      {
+         OperationException e = (OperationException) t;
+         return new OperationException(e.getOperationName(), getStepMessage(e, originalAddress, stepResultHandler), e);
+      }
+      else
+      {
+         return new OperationException(operationName, getStepMessage(t, originalAddress, stepResultHandler), t);
+      }
+   }
+
+   private static String getStepMessage(Throwable t, PathAddress originalAddress, StepResultHandler<ExportResourceModel> stepResultHandler)
+   {
+      String message = (t.getMessage() == null) ? "Step operation failure" : t.getMessage();
+      if (originalAddress.equals(stepResultHandler.getCurrentAddress()))
+      {
+         return message;
+      }
+      else
+      {
+         return message + " [Step Address: " + stepResultHandler.getCurrentAddress() + "]";
+      }
+   }
+
+   /**
+    * State of a single export. When running in parallel, a sibling resource is only handed to another thread if one is
+    * available, otherwise it is exported by the current thread. Threads never wait for queued work, so the walk cannot
+    * dead lock however deep the resource tree is.
+    */
+   private final class Export
+   {
+      private final ManagedResource resource;
+      private final PathAddress address;
+      private final PathTemplateFilter filter;
+      private final String operationName;
+      private final ExecutorService executor;
+      private final Semaphore threads;
+
+      private Export(ManagedResource resource, PathAddress address, PathTemplateFilter filter, String operationName, int parallelism)
+      {
+         this.resource = resource;
+         this.address = address;
+         this.filter = filter;
+         this.operationName = operationName;
+         if (parallelism > 1)
          {
-            throw new OperationException(operationName, "Could not parse filter attributes.", e);
+            this.executor = Executors.newCachedThreadPool(new ExportThreadFactory());
+            this.threads = new Semaphore(parallelism - 1);
          }
-
-         if (address.accepts(filter))
+         else
          {
-            handler.execute(operationContext, stepResultHandler);
+            this.executor = null;
+            this.threads = null;
          }
       }
-      else
+
+      /**
+       * Executes the export operation handler of the resource, or when the resource has none, reads the resource.
+       *
+       * @return the children of the resource to export, empty if the export operation handler was executed.
+       */
+      private Set<String> executeHandler(OperationContext operationContext, ResolvedAddress resolved, PathAddress address, StepResultHandler<ExportResourceModel> stepResultHandler)
       {
-         ManagedResource found = resource.getSubResource(address);
-         if (found == null)
+         OperationHandler handler = resolved.getOperationHandler(operationName);
+         if (handler != null && handler != ExportResource.this)
          {
-            throw new OperationException(operationName, "Could not locate resource at address " + address);
+            if (address.accepts(filter))
+            {
+               handler.execute(operationContext, stepResultHandler);
+            }
+            return Collections.emptySet();
          }
-         
-         OperationHandler readResource = resource.getOperationHandler(address, OperationNames.READ_RESOURCE);
+
+         OperationHandler readResource = resolved.getOperationHandler(OperationNames.READ_RESOURCE);
          BasicResultHandler readResourceResult = new BasicResultHandler();
          readResource.execute(operationContext, readResourceResult);
          if (readResourceResult.getFailureDescription() != null)
@@ -136,33 +282,286 @@ public class ExportResource extends QueryOperationHandler<ExportResourceModel>
             throw new RuntimeException("Was expecting " + ReadResourceModel.class + " to be returned for operation " + OperationNames.READ_RESOURCE + " at address " + address);
          }
 
-         for (String child : ((ReadResourceModel) model).getChildren())
+         return ((ReadResourceModel) model).getChildren();
+      }
+
+      private void executeHandlers(OperationContext operationContext, ResolvedAddress resolved, PathAddress address, StepResultHandler<ExportResourceModel> stepResultHandler)
+      {
+         Set<String> children = executeHandler(operationContext, resolved, address, stepResultHandler);
+         if (executor == null || children.size() < 2)
          {
-            final PathAddress childAddress = address.append(child);
-            OperationContext childContext = new OperationContextDelegate(operationContext)
+            for (String child : children)
+            {
+               new Step(operationContext, address.append(child), stepResultHandler).run();
+            }
+         }
+         else
+         {
+            executeSteps(operationContext, address, children, stepResultHandler);
+         }
+      }
+
+      /**
+       * Exports the children in parallel where threads are available. Each child collects its results in its own result
+       * handler, and the results are added to the parent handler in the order of the children.
+       */
+      private void executeSteps(OperationContext operationContext, PathAddress address, Set<String> children, StepResultHandler<ExportResourceModel> stepResultHandler)
+      {
+         List<Step> steps = new ArrayList<Step>(children.size());
+         List<Future<?>> futures = new ArrayList<Future<?>>(children.size());
+         try
+         {
+            for (String child : children)
+            {
+               PathAddress childAddress = address.append(child);
+               final Step step = new Step(operationContext, childAddress, new ExportResultHandler(this.address, childAddress, operationName));
+               steps.add(step);
+               if (threads.tryAcquire())
+               {
+                  futures.add(executor.submit(new Runnable()
+                  {
+                     @Override
+                     public void run()
+                     {
+                        try
+                        {
+                           step.run();
+                        }
+                        finally
+                        {
+                           threads.release();
+                        }
+                     }
+                  }));
+               }
+               else
+               {
+                  futures.add(null);
+                  try
+                  {
+                     step.run();
+                  }
+                  catch (Throwable t)
+                  {
+                     step.failure = t;
+                     break;
+                  }
+               }
+            }
+
+            for (int i = 0; i < steps.size(); i++)
+            {
+               Step step = steps.get(i);
+               Future<?> future = futures.get(i);
+               if (future != null)
+               {
+                  try
+                  {
+                     future.get();
+                  }
+                  catch (ExecutionException e)
+                  {
+                     step.failure = e.getCause();
+                  }
+                  catch (InterruptedException e)
+                  {
+                     Thread.currentThread().interrupt();
+                     throw new OperationException(operationName, "Export was interrupted.", e);
+                  }
+               }
+
+               if (step.failure != null)
+               {
+                  // Report the address of the failed step, just like a sequential export would
+                  stepResultHandler.next(step.resultHandler.getCurrentAddress());
+                  if (step.failure instanceof RuntimeException) throw (RuntimeException) step.failure;
+                  if (step.failure instanceof Error) throw (Error) step.failure;
+
+                  throw new OperationException(operationName, step.failure.getMessage(), step.failure);
+               }
+
+               stepResultHandler.getResults().addAll(step.resultHandler.getResults());
+            }
+         }
+         finally
+         {
+            for (Future<?> future : futures)
+            {
+               if (future != null) future.cancel(true);
+            }
+         }
+      }
+
+      private void shutdown()
+      {
+         if (executor != null) executor.shutdownNow();
+      }
+
+      /**
+       * Export of a resource. The resource of a child step is only resolved once the step is executed.
+       */
+      private final class Step implements Runnable
+      {
+         private final StepResultHandler<ExportResourceModel> resultHandler;
+         private OperationContext operationContext;
+         private PathAddress address;
+         private ResolvedAddress resolved;
+         private Throwable failure;
+
+         private Step(OperationContext operationContext, ResolvedAddress resolved, PathAddress address, StepResultHandler<ExportResourceModel> resultHandler)
+         {
+            this.operationContext = operationContext;
+            this.resolved = resolved;
+            this.address = address;
+            this.resultHandler = resultHandler;
+         }
+
+         private Step(OperationContext parentContext, PathAddress childAddress, StepResultHandler<ExportResourceModel> resultHandler)
+         {
+            this(parentContext, null, childAddress, resultHandler);
+         }
+
+         private void resolve()
+         {
+            if (resolved != null) return;
+
+            resolved = ExportResource.resolve(resource, address, operationName);
+            final PathAddress boundAddress = resolved.bind(address);
+            operationContext = new OperationContextDelegate(operationContext)
             {
                @Override
                public PathAddress getAddress()
                {
-                  return childAddress;
+                  return boundAddress;
                }
             };
+            address = boundAddress;
+         }
 
-            executeHandlers(resource, childContext, childAddress, operationName, stepResultHandler.next(childAddress));
+         @Override
+         public void run()
+         {
+            resolve();
+            executeHandlers(operationContext, resolved, address, resultHandler.next(address));
+         }
+      }
+
+      /**
+       * Walks the resource tree depth first while the tasks are iterated, executing one export operation handler at a
+       * time.
+       */
+      private final class Tasks implements Iterator<ExportTask>
+      {
+         private final Deque<Step> pending = new ArrayDeque<Step>();
+         private final StepResultHandler<ExportResourceModel> resultHandler;
+         private Iterator<ExportTask> current = Collections.<ExportTask>emptyList().iterator();
+
+         private Tasks(Step root)
+         {
+            this.resultHandler = root.resultHandler;
+            pending.push(root);
+         }
+
+         @Override
+         public boolean hasNext()
+         {
+            try
+            {
+               while (!current.hasNext())
+               {
+                  if (pending.isEmpty()) return false;
+
+                  current = execute(pending.pop());
+               }
+
+               return true;
+            }
+            catch (Throwable t)
+            {
+               pending.clear();
+               current = Collections.<ExportTask>emptyList().iterator();
+               throw stepFailure(t, address, operationName, resultHandler);
+            }
+         }
+
+         @Override
+         public ExportTask next()
+         {
+            if (!hasNext()) throw new NoSuchElementException();
+
+            return current.next();
+         }
+
+         @Override
+         public void remove()
+         {
+            throw new UnsupportedOperationException();
+         }
+
+         private Iterator<ExportTask> execute(Step step)
+         {
+            step.resolve();
+
+            List<ExportResourceModel> results = resultHandler.getResults();
+            results.clear();
+            List<String> children = new ArrayList<String>(executeHandler(step.operationContext, step.resolved, step.address, resultHandler.next(step.address)));
+
+            // Push the children in reverse order, so they are exported in order
+            for (int i = children.size() - 1; i >= 0; i--)
+            {
+               pending.push(new Step(step.operationContext, step.address.append(children.get(i)), resultHandler));
+            }
+
+            if (results.isEmpty()) return Collections.<ExportTask>emptyList().iterator();
+            if (results.size() == 1) return results.remove(0).iterator();
+
+            List<ExportTask> tasks = new ArrayList<ExportTask>();
+            for (ExportResourceModel model : results)
+            {
+               tasks.addAll(model.getTasks());
+            }
+            results.clear();
+            return tasks.iterator();
          }
       }
    }
 
-   private String getStepMessage(Throwable t, PathAddress originalAddress, StepResultHandler<ExportResourceModel> stepResultHandler)
+   private static final class ExportResultHandler extends StepResultHandler<ExportResourceModel>
    {
-      String message = (t.getMessage() == null) ? "Step operation failure" : t.getMessage();
-      if (originalAddress.equals(stepResultHandler.getCurrentAddress()))
+      private final PathAddress exportAddress;
+      private final String operationName;
+
+      private ExportResultHandler(PathAddress exportAddress, PathAddress address, String operationName)
       {
-         return message;
+         super(address);
+         this.exportAddress = exportAddress;
+         this.operationName = operationName;
       }
-      else
+
+      @Override
+      public void failed(String failureDescription)
       {
-         return message + " [Step Address: " + stepResultHandler.getCurrentAddress() + "]";
+         if (exportAddress.equals(getCurrentAddress()))
+         {
+            throw new OperationException(operationName, "Export operation failed. Reason: " + failureDescription);
+         }
+         else
+         {
+            throw new OperationException(operationName, "Export operation failed. Reason: " + failureDescription + " [Step Address: " + getCurrentAddress() + "]");
+         }
+      }
+   }
+
+   private static final class ExportThreadFactory implements ThreadFactory
+   {
+      private final AtomicInteger count = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable runnable)
+      {
+         Thread thread = new Thread(runnable, "gatein-management-export-" + count.incrementAndGet());
+         thread.setDaemon(true);
+         return thread;
       }
    }
 
@@ -0,0 +1,83 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.core.spi;
+
+import org.gatein.management.api.operation.OperationContext;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Holds the state of a single invocation of an annotated operation, which are the instances of the annotated resources
+ * involved in the request. Keeping this state per invocation allows the same annotated resource to serve concurrent
+ * requests.
+ *
+ * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
+ */
+class AnnotatedInvocation
+{
+   private final OperationContext context;
+   private final Map<AnnotatedResource, Object> instances = new IdentityHashMap<AnnotatedResource, Object>(4);
+   private Map<AnnotatedResource, Object> pooled;
+
+   AnnotatedInvocation(OperationContext context)
+   {
+      this.context = context;
+   }
+
+   OperationContext getContext()
+   {
+      return context;
+   }
+
+   Object getInstance(AnnotatedResource resource)
+   {
+      return instances.get(resource);
+   }
+
+   void putInstance(AnnotatedResource resource, Object instance, boolean borrowed)
+   {
+      instances.put(resource, instance);
+      if (borrowed)
+      {
+         if (pooled == null)
+         {
+            pooled = new IdentityHashMap<AnnotatedResource, Object>(2);
+         }
+         pooled.put(resource, instance);
+      }
+   }
+
+   void release()
+   {
+      instances.clear();
+      if (pooled != null)
+      {
+         for (Map.Entry<AnnotatedResource, Object> entry : pooled.entrySet())
+         {
+            entry.getKey().returnInstance(entry.getValue());
+         }
+         pooled = null;
+      }
+   }
+}
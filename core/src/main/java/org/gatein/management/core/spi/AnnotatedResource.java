@@ -31,8 +31,8 @@ import org.gatein.management.api.annotations.ManagedAfter;
 import org.gatein.management.api.annotations.ManagedBefore;
 import org.gatein.management.api.annotations.ManagedContext;
 import org.gatein.management.api.annotations.ManagedRole;
+import org.gatein.management.api.annotations.ManagedScope;
 import org.gatein.management.api.model.ModelProvider;
-import org.gatein.management.api.operation.OperationContext;
 import org.gatein.management.core.api.AbstractManagedResource;
 import org.gatein.management.core.api.model.DmrModelProvider;
 
@@ -42,6 +42,8 @@ import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
@@ -52,16 +54,19 @@ class AnnotatedResource
 
    //
    private List<AnnotatedOperation> methods;
-   private Object instance;
-   private boolean component;
+   private volatile Object component;
+   private volatile Object singleton;
+   private final Queue<Object> pool;
 
    //
    final Class<?> managedClass;
-   final Method beforeMethod;
-   final Method afterMethod;
+   final InvocationPlan beforeMethod;
+   final InvocationPlan afterMethod;
    final AnnotatedResource parent;
    final AnnotatedOperation operation; // sub operation
    final String managedRole;
+   final ManagedScope.Scope scope;
+   private final Field[] modelProviderFields;
 
    AnnotatedResource(Class<?> managedClass)
    {
@@ -76,10 +81,14 @@ class AnnotatedResource
 
       // Save before and after methods
       Method[] methods = managedClass.getDeclaredMethods();
-      this.beforeMethod = getMethod(methods, ManagedBefore.class);
-      this.afterMethod = getMethod(methods, ManagedAfter.class);
+      this.beforeMethod = getPlan(methods, ManagedBefore.class, managedClass);
+      this.afterMethod = getPlan(methods, ManagedAfter.class, managedClass);
+      this.modelProviderFields = getModelProviderFields(managedClass);
       ManagedRole role = managedClass.getAnnotation(ManagedRole.class);
       managedRole = (role == null) ? null : role.value();
+      ManagedScope managedScope = managedClass.getAnnotation(ManagedScope.class);
+      scope = (managedScope == null) ? ManagedScope.Scope.REQUEST : managedScope.value();
+      pool = (scope == ManagedScope.Scope.POOLED) ? new ConcurrentLinkedQueue<Object>() : null;
    }
 
    public void register(AbstractManagedResource resource)
@@ -91,47 +100,95 @@ class AnnotatedResource
       }
    }
 
-   Object getInstance(OperationContext context)
+   Object getInstance(AnnotatedInvocation invocation)
    {
+      Object instance = component;
+      if (instance != null) return instance;
+
+      instance = invocation.getInstance(this);
       if (instance != null) return instance;
 
       if (parent == null)
       {
-         instance = context.getRuntimeContext().getRuntimeComponent(managedClass);
+         instance = invocation.getContext().getRuntimeContext().getRuntimeComponent(managedClass);
          if (instance != null)
          {
-            component = true;
-            setModelProvider(managedClass, instance);
+            setModelProvider(instance);
+            component = instance;
+            return instance;
          }
       }
       else if (operation != null)
       {
-         instance = operation.invokeOperation(context);
+         instance = operation.invokeOperation(invocation);
+         if (instance != null)
+         {
+            setModelProvider(instance);
+            invocation.putInstance(this, instance, false);
+            return instance;
+         }
       }
 
-      if (instance == null)
+      switch (scope)
       {
-         try
-         {
-            instance = managedClass.newInstance();
-         }
-         catch (Exception e)
-         {
-            throw new RuntimeException("Could not create new instance of class " + managedClass.getName(), e);
-         }
+         case SINGLETON:
+            instance = getSingleton();
+            break;
+         case POOLED:
+            instance = pool.poll();
+            if (instance == null)
+            {
+               instance = newInstance();
+            }
+            break;
+         default:
+            instance = newInstance();
       }
 
-      if (instance != null && !component)
+      invocation.putInstance(this, instance, scope == ManagedScope.Scope.POOLED);
+      return instance;
+   }
+
+   void returnInstance(Object instance)
+   {
+      if (pool != null)
       {
-         setModelProvider(managedClass, instance);
+         pool.offer(instance);
+      }
+   }
+
+   private Object getSingleton()
+   {
+      Object instance = singleton;
+      if (instance == null)
+      {
+         synchronized (this)
+         {
+            instance = singleton;
+            if (instance == null)
+            {
+               singleton = instance = newInstance();
+            }
+         }
       }
 
       return instance;
    }
 
-   void discardInstance()
+   private Object newInstance()
    {
-      if (!component) instance = null;
+      Object instance;
+      try
+      {
+         instance = managedClass.newInstance();
+      }
+      catch (Exception e)
+      {
+         throw new RuntimeException("Could not create new instance of class " + managedClass.getName(), e);
+      }
+
+      setModelProvider(instance);
+      return instance;
    }
 
    public List<AnnotatedOperation> getAnnotatedMethods()
@@ -188,45 +245,65 @@ class AnnotatedResource
       };
    }
 
-   private static Method getMethod(Method[] methods, Class<? extends Annotation> annotation)
+   private static InvocationPlan getPlan(Method[] methods, Class<? extends Annotation> annotation, Class<?> managedClass)
    {
       for (Method method : methods)
       {
-         if (method.isAnnotationPresent(annotation)) return method;
+         if (method.isAnnotationPresent(annotation)) return new InvocationPlan(method, managedClass);
       }
 
       return null;
    }
 
-   private static void setModelProvider(Class<?> managedClass, Object instance)
+   /**
+    * @return the fields to inject the model provider into, or null if a field annotated with @ManagedContext has a type
+    * which cannot be injected, which fails when an instance is created.
+    */
+   private static Field[] getModelProviderFields(Class<?> managedClass)
    {
-      if (instance == null) return;
-
-      Field[] fields = managedClass.getDeclaredFields();
-      for (Field field : fields)
+      List<Field> fields = new ArrayList<Field>();
+      for (Field field : managedClass.getDeclaredFields())
       {
          if (field.isAnnotationPresent(ManagedContext.class))
          {
-            if (field.getType() == ModelProvider.class)
+            if (field.getType() != ModelProvider.class) return null;
+
+            if (!field.isAccessible())
             {
-               if (!field.isAccessible())
-               {
-                  field.setAccessible(true);
-               }
-               try
-               {
-                  field.set(instance, DmrModelProvider.INSTANCE);
-               }
-               catch (IllegalAccessException e)
-               {
-                  throw new RuntimeException("Unable to set ModelProvider for managed class " + managedClass, e);
-               }
+               field.setAccessible(true);
             }
-            else
+            fields.add(field);
+         }
+      }
+
+      return fields.toArray(new Field[fields.size()]);
+   }
+
+   private void setModelProvider(Object instance)
+   {
+      if (instance == null) return;
+
+      if (modelProviderFields == null)
+      {
+         for (Field field : managedClass.getDeclaredFields())
+         {
+            if (field.isAnnotationPresent(ManagedContext.class) && field.getType() != ModelProvider.class)
             {
                throw new RuntimeException("Field " + field + " is annotated with @ManagedContext, however it has an unknown type " + field.getType() + ". Only ModelProvider is allowed as the type for this field.");
             }
          }
       }
+
+      for (Field field : modelProviderFields)
+      {
+         try
+         {
+            field.set(instance, DmrModelProvider.INSTANCE);
+         }
+         catch (IllegalAccessException e)
+         {
+            throw new RuntimeException("Unable to set ModelProvider for managed class " + managedClass, e);
+         }
+      }
    }
 }
@@ -0,0 +1,381 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.core.spi;
+
+import org.gatein.common.logging.Logger;
+import org.gatein.common.logging.LoggerFactory;
+import org.gatein.management.api.ManagedUser;
+import org.gatein.management.api.PathAddress;
+import org.gatein.management.api.RuntimeContext;
+import org.gatein.management.api.annotations.ManagedContext;
+import org.gatein.management.api.annotations.MappedAttribute;
+import org.gatein.management.api.annotations.MappedPath;
+import org.gatein.management.api.binding.Marshaller;
+import org.gatein.management.api.exceptions.OperationException;
+import org.gatein.management.api.model.ModelProvider;
+import org.gatein.management.api.model.ModelValue;
+import org.gatein.management.api.operation.OperationAttachment;
+import org.gatein.management.api.operation.OperationAttributes;
+import org.gatein.management.api.operation.OperationContext;
+import org.gatein.management.core.api.model.DmrModelValue;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+
+/**
+ * Invocation of an annotated method. How each parameter of the method is resolved from the operation context is worked
+ * out once, when the plan is created, so invoking the method only runs the resolved parameter binders.
+ *
+ * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
+ */
+class InvocationPlan
+{
+   private static final Logger log = LoggerFactory.getLogger("org.gatein.management.core.spi");
+
+   private final Method method;
+   private final String name;
+   private final ParameterBinder[] binders;
+
+   InvocationPlan(Method method, Class<?> managedClass)
+   {
+      this.method = method;
+      this.name = getName(method);
+
+      // Skip the access checks of every invocation
+      if (!method.isAccessible())
+      {
+         try
+         {
+            method.setAccessible(true);
+         }
+         catch (SecurityException e)
+         {
+            log.debug("Could not suppress access checks for method " + name, e);
+         }
+      }
+
+      Annotation[][] parameterAnnotations = method.getParameterAnnotations();
+      Class<?>[] parameterTypes = method.getParameterTypes();
+      binders = new ParameterBinder[parameterTypes.length];
+      boolean consumesAttachment = false;
+      for (int i = 0; i < parameterTypes.length; i++)
+      {
+         binders[i] = createBinder(parameterAnnotations[i], parameterTypes[i], consumesAttachment, managedClass);
+         if (binders[i] instanceof DetypedModelBinder || binders[i] instanceof MarshalledBinder) consumesAttachment = true;
+      }
+   }
+
+   Method getMethod()
+   {
+      return method;
+   }
+
+   String getName()
+   {
+      return name;
+   }
+
+   Object invoke(OperationContext operationContext, Object instance) throws IllegalAccessException, InvocationTargetException
+   {
+      Object[] params = new Object[binders.length];
+      for (int i = 0; i < binders.length; i++)
+      {
+         params[i] = binders[i].bind(operationContext);
+      }
+
+      return method.invoke(instance, params);
+   }
+
+   private ParameterBinder createBinder(Annotation[] annotations, final Class<?> type, boolean attachmentConsumed, Class<?> managedClass)
+   {
+      MappedPath pathTemplate;
+      MappedAttribute managedAttribute;
+      // Resolve path template and set as parameter to method
+      if ((pathTemplate = getAnnotation(annotations, MappedPath.class)) != null)
+      {
+         return new PathTemplateBinder(pathTemplate.value());
+      }
+      // Resolve attribute name and set as parameter to method
+      else if ((managedAttribute = getAnnotation(annotations, MappedAttribute.class)) != null)
+      {
+         if (List.class == type)
+         {
+            return new AttributeBinder(managedAttribute.value(), true);
+         }
+         else if (String.class == type)
+         {
+            return new AttributeBinder(managedAttribute.value(), false);
+         }
+
+         return new FailingBinder("The parameter type " + type +
+            " cannot be annotated by @" + MappedAttribute.class.getName() + ". Only List<String> and String are allowed.");
+      }
+      // Method wants something from the OperationContext, or the entire OperationContext object.
+      else if (getAnnotation(annotations, ManagedContext.class) != null)
+      {
+         if (RuntimeContext.class == type)
+         {
+            return new ParameterBinder()
+            {
+               @Override
+               public Object bind(OperationContext operationContext)
+               {
+                  return operationContext.getRuntimeContext();
+               }
+            };
+         }
+         else if (PathAddress.class == type)
+         {
+            return new ParameterBinder()
+            {
+               @Override
+               public Object bind(OperationContext operationContext)
+               {
+                  return operationContext.getAddress();
+               }
+            };
+         }
+         else if (OperationAttributes.class == type)
+         {
+            return new ParameterBinder()
+            {
+               @Override
+               public Object bind(OperationContext operationContext)
+               {
+                  return operationContext.getAttributes();
+               }
+            };
+         }
+         else if (ManagedUser.class == type)
+         {
+            return new ParameterBinder()
+            {
+               @Override
+               public Object bind(OperationContext operationContext)
+               {
+                  return operationContext.getUser();
+               }
+            };
+         }
+         else if (ModelValue.class.isAssignableFrom(type))
+         {
+            return new DetypedModelBinder();
+         }
+         else if (ModelProvider.class.isAssignableFrom(type))
+         {
+            @SuppressWarnings("unchecked")
+            final Class<? extends ModelValue> modelType = (Class<? extends ModelValue>) type;
+            return new ParameterBinder()
+            {
+               @Override
+               public Object bind(OperationContext operationContext)
+               {
+                  return operationContext.newModel(modelType);
+               }
+            };
+         }
+         else if (OperationContext.class == type)
+         {
+            return new ParameterBinder()
+            {
+               @Override
+               public Object bind(OperationContext operationContext)
+               {
+                  return operationContext;
+               }
+            };
+         }
+
+         return NULL_BINDER;
+      }
+
+      // Currently only one attachment is supported, and that's the data stream (input) of the management operation.
+      if (attachmentConsumed)
+      {
+         return new FailingBinder("Cannot unmarshal " + type + " for method " + name +
+            " and component " + managedClass.getName() + ". This is because input stream was already consumed. " +
+            "This can happen if the marshaled type is not declared before @ManagedContext for detyped ModelValue type.");
+      }
+
+      return new MarshalledBinder(type, managedClass);
+   }
+
+   private static String getName(Method method)
+   {
+      String name = method.getName();
+      StringBuilder sb = new StringBuilder();
+      sb.append(name).append("(");
+      Class<?>[] parameters = method.getParameterTypes();
+      for (int i=0; i<parameters.length; i++)
+      {
+         sb.append(parameters[i].getName());
+         if (i != parameters.length-1)
+         {
+            sb.append(", ");
+         }
+      }
+      sb.append(")");
+
+      return sb.toString();
+   }
+
+   private static <A extends Annotation> A getAnnotation(Annotation[] annotations, Class<A> type)
+   {
+      for (Annotation annotation : annotations)
+      {
+         if (annotation.annotationType() == type) return type.cast(annotation);
+      }
+
+      return null;
+   }
+
+   private static interface ParameterBinder
+   {
+      Object bind(OperationContext operationContext);
+   }
+
+   private static final ParameterBinder NULL_BINDER = new ParameterBinder()
+   {
+      @Override
+      public Object bind(OperationContext operationContext)
+      {
+         return null;
+      }
+   };
+
+   private static class PathTemplateBinder implements ParameterBinder
+   {
+      private final String template;
+
+      private PathTemplateBinder(String template)
+      {
+         this.template = template;
+      }
+
+      @Override
+      public Object bind(OperationContext operationContext)
+      {
+         String value = operationContext.getAddress().resolvePathTemplate(template);
+         if (log.isDebugEnabled()) log.debug("Resolved path template " + template + "=" + value);
+
+         return value;
+      }
+   }
+
+   private static class AttributeBinder implements ParameterBinder
+   {
+      private final String attribute;
+      private final boolean list;
+
+      private AttributeBinder(String attribute, boolean list)
+      {
+         this.attribute = attribute;
+         this.list = list;
+      }
+
+      @Override
+      public Object bind(OperationContext operationContext)
+      {
+         Object value = (list) ? operationContext.getAttributes().getValues(attribute) : operationContext.getAttributes().getValue(attribute);
+         if (log.isDebugEnabled()) log.debug("Resolved attribute " + attribute + "=" + value);
+
+         return value;
+      }
+   }
+
+   private static class DetypedModelBinder implements ParameterBinder
+   {
+      @Override
+      public Object bind(OperationContext operationContext)
+      {
+         OperationAttachment attachment = operationContext.getAttachment(true);
+         if (attachment == null)
+         {
+            throw new OperationException(operationContext.getOperationName(), "Data stream not available.");
+         }
+
+         try
+         {
+            return DmrModelValue.readFromJsonStream(attachment.getStream());
+         }
+         catch (IOException e)
+         {
+            log.error("IOException reading from JSON stream for detyped model.", e);
+            throw new OperationException(operationContext.getOperationName(), "Could not properly read data stream. See log for more details.", e);
+         }
+      }
+   }
+
+   private class MarshalledBinder implements ParameterBinder
+   {
+      private final Class<?> type;
+      private final Class<?> managedClass;
+
+      private MarshalledBinder(Class<?> type, Class<?> managedClass)
+      {
+         this.type = type;
+         this.managedClass = managedClass;
+      }
+
+      @Override
+      public Object bind(OperationContext operationContext)
+      {
+         boolean debug = log.isDebugEnabled();
+         if (debug) log.debug("Encountered unannotated parameter. Will try and find marshaller for type " + type);
+
+         Marshaller<?> marshaller = operationContext.getBindingProvider().getMarshaller(type, operationContext.getContentType());
+         if (marshaller == null)
+         {
+            throw new RuntimeException("Could not find marshaller for " + type +
+               " and therefore cannot pass parameter of this type to method " + name + " for component " + managedClass.getName());
+         }
+
+         OperationAttachment attachment = operationContext.getAttachment(true);
+         if (attachment == null) throw new OperationException(operationContext.getOperationName(), "No attachment was found for this operation.");
+
+         Object value = marshaller.unmarshal(attachment.getStream());
+         if (debug) log.debug("Successfully unmarshaled object of type " + type);
+
+         return value;
+      }
+   }
+
+   private static class FailingBinder implements ParameterBinder
+   {
+      private final String message;
+
+      private FailingBinder(String message)
+      {
+         this.message = message;
+      }
+
+      @Override
+      public Object bind(OperationContext operationContext)
+      {
+         throw new RuntimeException(message);
+      }
+   }
+}
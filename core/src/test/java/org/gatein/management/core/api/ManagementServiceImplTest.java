@@ -0,0 +1,158 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.core.api;
+
+import org.gatein.management.api.ContentType;
+import org.gatein.management.api.ManagedResource;
+import org.gatein.management.api.PathAddress;
+import org.gatein.management.api.binding.BindingException;
+import org.gatein.management.api.binding.Marshaller;
+import org.gatein.management.api.operation.model.ExportResourceModel;
+import org.gatein.management.api.operation.model.ExportTask;
+import org.gatein.management.core.api.binding.GlobalBindingProvider;
+import org.gatein.management.spi.ExtensionContext;
+import org.gatein.management.spi.ManagementExtension;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
+ * @version $Revision$
+ */
+public class ManagementServiceImplTest
+{
+   private static final List<TestExtension> extensions = new ArrayList<TestExtension>();
+
+   @Before
+   public void init()
+   {
+      extensions.clear();
+   }
+
+   @Test
+   public void testReloadWaitsForRequests()
+   {
+      ManagementServiceImpl service = new ManagementServiceImpl();
+      service.load();
+      assertEquals(1, extensions.size());
+      TestExtension first = extensions.get(0);
+
+      ManagementServiceImpl.Resources resources = service.acquire();
+      ManagedResource root = resources.getRootResource();
+
+      service.reloadExtensions();
+      assertEquals(2, extensions.size());
+      assertNotSame(root, service.getManagedResource(PathAddress.EMPTY_ADDRESS));
+
+      // The request still runs against the old extension
+      assertFalse(first.destroyed);
+      resources.release();
+      assertTrue(first.destroyed);
+
+      // Releasing twice does not affect the current snapshot
+      resources.release();
+      assertFalse(extensions.get(1).destroyed);
+
+      service.unload();
+      assertTrue(extensions.get(1).destroyed);
+   }
+
+   @Test
+   public void testUnloadWithoutRequests()
+   {
+      ManagementServiceImpl service = new ManagementServiceImpl();
+      service.load();
+      service.unload();
+      assertTrue(extensions.get(0).destroyed);
+   }
+
+   @Test
+   public void testUnloadShutsDownExportThreads() throws Exception
+   {
+      System.setProperty(GlobalBindingProvider.EXPORT_THREADS_PROPERTY, "2");
+      try
+      {
+         ManagementServiceImpl service = new ManagementServiceImpl();
+         service.load();
+         Marshaller<ExportResourceModel> marshaller = service.getBindingProvider("test").getMarshaller(ExportResourceModel.class, ContentType.ZIP);
+         marshaller.marshal(exportModel(), new ByteArrayOutputStream(), false);
+
+         service.unload();
+         try
+         {
+            marshaller.marshal(exportModel(), new ByteArrayOutputStream(), false);
+            fail("Export threads should have been shut down");
+         }
+         catch (BindingException e)
+         {
+         }
+      }
+      finally
+      {
+         System.clearProperty(GlobalBindingProvider.EXPORT_THREADS_PROPERTY);
+      }
+   }
+
+   private static ExportResourceModel exportModel()
+   {
+      return new ExportResourceModel(new ExportTask()
+      {
+         @Override
+         public String getEntry()
+         {
+            return "entry.xml";
+         }
+
+         @Override
+         public void export(OutputStream outputStream) throws IOException
+         {
+            outputStream.write("content".getBytes("UTF-8"));
+         }
+      });
+   }
+
+   public static class TestExtension implements ManagementExtension
+   {
+      private volatile boolean destroyed;
+
+      @Override
+      public void initialize(ExtensionContext context)
+      {
+         extensions.add(this);
+      }
+
+      @Override
+      public void destroy()
+      {
+         destroyed = true;
+      }
+   }
+}
@@ -22,9 +22,11 @@
 
 package org.gatein.management.core.api;
 
+import org.gatein.management.api.PathAddress;
 import org.junit.Test;
 
 import java.text.ParseException;
+import java.util.Map;
 import java.util.regex.PatternSyntaxException;
 
 import static org.junit.Assert.*;
@@ -86,6 +88,85 @@ public class PathElementTest
       assertEquals("blah", PathElement.pathElement("foo/{required}/{optional: .*}").resolve("optional", "foo/bar/blah"));
    }
 
+   @Test
+   public void testMinimumSegments() throws ParseException
+   {
+      assertEquals(1, PathElement.pathElement("foo").getMinimumSegments());
+      assertEquals(1, PathElement.pathElement("{path: .*}").getMinimumSegments());
+      assertEquals(2, PathElement.pathElement("{path: .*}/bar").getMinimumSegments());
+      assertEquals(2, PathElement.pathElement("{alphapath: [a-zA-Z]{3}}/{numpath: [0-9]*}").getMinimumSegments());
+      assertEquals(3, PathElement.pathElement("something/{weird: \\{foo\\}\\/\\{bar\\}}/else").getMinimumSegments());
+   }
+
+   @Test
+   public void testSegmentMatcher() throws ParseException
+   {
+      PathAddress address = PathAddress.pathAddress("mop", "groupsites", "platform", "administrators", "pages");
+
+      assertSegmentMatches("{site-type}sites", address, 1, 2);
+      assertSegmentMatches("{site-name: [-_\\w\\/]*}", address, 2, 3, 4, 5);
+      assertSegmentMatches("{nav-uri: .*}", address, 0, 1, 2, 3, 4, 5);
+      assertSegmentMatches("{name}", address, 0, 1);
+      assertSegmentMatches("mop/{type}/{name: .*}", address, 0, 3, 4, 5);
+      assertSegmentMatches("{alphapath: [a-zA-Z]{3}}/{numpath: [0-9]*}", PathAddress.pathAddress("foo", "123"), 0, 2);
+      assertSegmentMatches("{path: .*}/bar", PathAddress.pathAddress("foo", "foo-bar", "bar"), 0, 3);
+      assertSegmentMatches("groupsites", address, 1, 2);
+      assertSegmentMatches("{path: [a-z]*}", address, 1, 2);
+      assertSegmentMatches("{num: [0-9]+}", address, 1);
+   }
+
+   @Test
+   public void testMatchesSegment() throws ParseException
+   {
+      assertTrue(PathElement.pathElement("{site-type}sites").matchesSegment("portalsites"));
+      assertFalse(PathElement.pathElement("{site-type}sites").matchesSegment("sites"));
+      assertTrue(PathElement.pathElement("{foo}-{bar}").matchesSegment("a-b"));
+      assertTrue(PathElement.pathElement("{path: .*}").matchesSegment("foo"));
+      assertFalse(PathElement.pathElement("{num: [0-9]+}").matchesSegment("foo"));
+      assertFalse(PathElement.pathElement("foo/{bar}").matchesSegment("foo"));
+   }
+
+   @Test
+   public void testCapture() throws ParseException
+   {
+      PathAddress address = PathAddress.pathAddress("mop", "groupsites", "platform", "administrators");
+
+      assertEquals("group", PathElement.pathElement("{site-type}sites").capture(address, 1, 2).get("site-type"));
+      assertEquals("platform/administrators", PathElement.pathElement("{site-name: [-_\\w\\/]*}").capture(address, 2, 4).get("site-name"));
+      assertTrue(PathElement.pathElement("groupsites").capture(address, 1, 2).isEmpty());
+
+      Map<String, String> values = PathElement.pathElement("mop/{type}/{name: .*}").capture(address, 0, 4);
+      assertEquals(2, values.size());
+      assertEquals("groupsites", values.get("type"));
+      assertEquals("platform/administrators", values.get("name"));
+
+      values = PathElement.pathElement("{alphapath: [a-zA-Z]{3}}/{numpath: [0-9]*}").capture(PathAddress.pathAddress("foo", "123"), 0, 2);
+      assertEquals("foo", values.get("alphapath"));
+      assertEquals("123", values.get("numpath"));
+   }
+
+   private static void assertSegmentMatches(String template, PathAddress address, int start, int... ends)
+   {
+      PathElement element = PathElement.pathElement(template);
+      PathElement.SegmentMatcher matcher = element.matcher(address, start);
+      int expected = 0;
+      for (int end = start + 1; end <= address.size(); end++)
+      {
+         boolean matches = expected < ends.length && ends[expected] == end;
+         if (matches) expected++;
+
+         assertEquals(template + " matching segments " + start + " to " + end, matches, matcher.matches(end));
+
+         StringBuilder path = new StringBuilder();
+         for (int i = start; i < end; i++)
+         {
+            if (i > start) path.append('/');
+            path.append(address.get(i));
+         }
+         assertEquals(template + " matching " + path, matches, element.matches(path.toString()));
+      }
+   }
+
    @Test
    public void testBadTemplateExpression()
    {
@@ -240,6 +240,127 @@ public class SimpleManagedResourceTest
       assertEquals(navOh, root.getOperationHandler(address, "read-resource"));
    }
 
+   @Test
+   public void testLiteralBeforeTemplate()
+   {
+      SimpleManagedResource root = createRootResource();
+      ManagedResource.Registration foo = root.registerSubResource("foo", description("foo description"));
+      foo.registerSubResource("{name}", description("name description"));
+      foo.registerSubResource("bar", description("bar description"));
+
+      PathAddress address = PathAddress.pathAddress("foo", "bar");
+      assertEquals("bar description", root.getResourceDescription(address).getDescription());
+      assertNull(address.resolvePathTemplate("name"));
+
+      address = PathAddress.pathAddress("foo", "blah");
+      assertEquals("name description", root.getResourceDescription(address).getDescription());
+      assertEquals("blah", address.resolvePathTemplate("name"));
+   }
+
+   @Test
+   public void testTemplateBacktracking()
+   {
+      SimpleManagedResource root = createRootResource();
+      ManagedResource.Registration foo = root.registerSubResource("foo", description("foo description"));
+      ManagedResource.Registration num = foo.registerSubResource("{num: [0-9]+}", description("num description"));
+      num.registerSubResource("child", description("num child description"));
+      ManagedResource.Registration any = foo.registerSubResource("{any}", description("any description"));
+      any.registerSubResource("other", description("any other description"));
+
+      PathAddress address = PathAddress.pathAddress("foo", "123", "child");
+      assertEquals("num child description", root.getResourceDescription(address).getDescription());
+      assertEquals("123", address.resolvePathTemplate("num"));
+
+      address = PathAddress.pathAddress("foo", "123", "other");
+      assertEquals("any other description", root.getResourceDescription(address).getDescription());
+      assertEquals("123", address.resolvePathTemplate("any"));
+      assertNull(address.resolvePathTemplate("num"));
+
+      assertNull(root.getSubResource(PathAddress.pathAddress("foo", "123", "unknown")));
+   }
+
+   @Test
+   public void testMultiSegmentLiteral()
+   {
+      SimpleManagedResource root = createRootResource();
+      ManagedResource.Registration foo = root.registerSubResource("foo/bar", description("foo bar description"));
+      foo.registerSubResource("child", description("child description"));
+
+      assertNull(root.getSubResource(PathAddress.pathAddress("foo")));
+      assertEquals("foo bar description", root.getResourceDescription(PathAddress.pathAddress("foo", "bar")).getDescription());
+      assertEquals("child description", root.getResourceDescription(PathAddress.pathAddress("foo", "bar", "child")).getDescription());
+   }
+
+   @Test
+   public void testResolveAddress()
+   {
+      OperationHandler globalOh = mock(OperationHandler.class);
+
+      SimpleManagedResource root = createRootResource();
+      root.registerOperationHandler("read-resource", globalOh, description("global read resource"), true);
+      ManagedResource.Registration foo = root.registerSubResource("foo", description("foo description"));
+      foo.registerSubResource("{name}", description("name description"));
+
+      PathAddress address = PathAddress.pathAddress("foo", "bar");
+      ResolvedAddress resolved = root.resolveAddress(address);
+      assertNotNull(resolved);
+      assertNull(address.resolvePathTemplate("name"));
+      assertEquals("name description", resolved.getResourceDescription().getDescription());
+      assertEquals(globalOh, resolved.getOperationHandler("read-resource"));
+      assertEquals(1, resolved.getOperationDescriptions().size());
+
+      PathAddress other = PathAddress.pathAddress("foo/bar");
+      other = resolved.bind(other);
+      assertEquals("bar", other.resolvePathTemplate("name"));
+
+      assertNull(root.resolveAddress(PathAddress.pathAddress("bar")));
+   }
+
+   @Test
+   public void testRevision()
+   {
+      SimpleManagedResource root = createRootResource();
+      long revision = root.getRevision();
+
+      ManagedResource.Registration foo = root.registerSubResource("foo", description("foo description"));
+      assertTrue(root.getRevision() > revision);
+
+      revision = root.getRevision();
+      foo.registerOperationHandler("foo-op", mock(OperationHandler.class), description("foo op"));
+      assertTrue(root.getRevision() > revision);
+      assertEquals(root.getRevision(), ((SimpleManagedResource) foo).getRevision());
+   }
+
+   @Test
+   public void testFreeze()
+   {
+      SimpleManagedResource root = createRootResource();
+      ManagedResource.Registration foo = root.registerSubResource("foo", description("foo description"));
+      root.freeze();
+
+      assertTrue(root.isFrozen());
+      assertTrue(((SimpleManagedResource) foo).isFrozen());
+      assertNotNull(root.getSubResource(PathAddress.pathAddress("foo")));
+
+      try
+      {
+         root.registerSubResource("bar", description("bar description"));
+         fail();
+      }
+      catch (IllegalStateException e)
+      {
+      }
+
+      try
+      {
+         foo.registerOperationHandler("foo-op", mock(OperationHandler.class), description("foo op"));
+         fail();
+      }
+      catch (IllegalStateException e)
+      {
+      }
+   }
+
    @Test
    public void testSubResourceDescription()
    {
@@ -420,6 +541,33 @@ public class SimpleManagedResourceTest
       assertNotNull(root.getOperationHandler(PathAddress.pathAddress("component1", "foo", "bar"), "read-resource"));
    }
 
+   @Test
+   public void testInheritedOperationTable()
+   {
+      OperationHandler aHandler = mock(OperationHandler.class);
+      OperationHandler bHandler = mock(OperationHandler.class);
+      OperationHandler lateHandler = mock(OperationHandler.class);
+
+      SimpleManagedResource root = createRootResource();
+      ManagedResource.Registration a = root.registerSubResource("a", description("a description"));
+      ManagedResource.Registration b = a.registerSubResource("b", description("b description"));
+      b.registerSubResource("c", description("c description"));
+
+      a.registerOperationHandler("op", aHandler, description("a op"), true);
+      b.registerOperationHandler("op", bHandler, description("b op"));
+
+      assertEquals(aHandler, root.getOperationHandler(PathAddress.pathAddress("a"), "op"));
+      assertEquals(bHandler, root.getOperationHandler(PathAddress.pathAddress("a", "b"), "op"));
+      assertEquals(aHandler, root.getOperationHandler(PathAddress.pathAddress("a", "b", "c"), "op"));
+      assertEquals("a op", root.getOperationDescriptions(PathAddress.pathAddress("a", "b", "c")).get("op").getDescription());
+      assertTrue(root.getOperationDescriptions(PathAddress.empty()).isEmpty());
+
+      // Registering after sub-resources exist is visible to them
+      root.registerOperationHandler("late", lateHandler, description("late op"), true);
+      assertEquals(lateHandler, root.getOperationHandler(PathAddress.pathAddress("a", "b", "c"), "late"));
+      assertEquals(2, root.getOperationDescriptions(PathAddress.pathAddress("a", "b", "c")).size());
+   }
+
    @Test
    public void testLocationString()
    {
@@ -0,0 +1,548 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.core.api.binding.zip;
+
+import org.gatein.management.api.binding.BindingException;
+import org.gatein.management.api.binding.SpoolDirectory;
+import org.gatein.management.api.operation.model.ExportResourceModel;
+import org.gatein.management.api.operation.model.ExportTask;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
+ * @version $Revision$
+ */
+public class ExportResourceModelMarshallerTest
+{
+   @Rule
+   public TemporaryFolder folder = new TemporaryFolder();
+
+   @Test
+   public void testStreaming() throws Exception
+   {
+      ExportResourceModelMarshaller marshaller = new ExportResourceModelMarshaller();
+      marshaller.setStreaming(true);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      marshaller.marshal(model(), out, false);
+
+      assertZip(out.toByteArray());
+   }
+
+   @Test
+   public void testFailureAfterFirstEntry() throws Exception
+   {
+      // The first entry is larger than any write buffer, so streaming it would reach the output stream
+      final byte[] content = new byte[256 * 1024];
+      new Random(42).nextBytes(content);
+
+      ExportResourceModel model = new ExportResourceModel(new ArrayList<ExportTask>());
+      model.addTask(new ExportTask()
+      {
+         @Override
+         public String getEntry()
+         {
+            return "large.xml";
+         }
+
+         @Override
+         public void export(OutputStream outputStream) throws IOException
+         {
+            outputStream.write(content);
+         }
+      });
+      model.addTask(new ExportTask()
+      {
+         @Override
+         public String getEntry()
+         {
+            return "failure.xml";
+         }
+
+         @Override
+         public void export(OutputStream outputStream) throws IOException
+         {
+            throw new IOException("failure");
+         }
+      });
+
+      // Spooled by default, so the entries exported before the failure are not written either
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      try
+      {
+         new ExportResourceModelMarshaller().marshal(model, out, false);
+         fail("Marshalling should fail");
+      }
+      catch (BindingException e)
+      {
+         assertEquals("failure", e.getCause().getMessage());
+      }
+      assertEquals(0, out.size());
+   }
+
+   @Test
+   public void testZip64Entries() throws Exception
+   {
+      // More entries than fit in the end of central directory record
+      int entries = ZipWriter.MAX_ENTRIES + 10;
+      File file = folder.newFile("entries.zip");
+      OutputStream out = new FileOutputStream(file);
+      try
+      {
+         ZipWriter zip = new ZipWriter(new BufferedOutputStream(out), new DeflaterPool(1));
+         byte[] data = "content".getBytes("UTF-8");
+         for (int i = 0; i < entries; i++)
+         {
+            if (i % 2 == 0)
+            {
+               zip.putStoredEntry(String.valueOf(i), data, data.length);
+            }
+            else
+            {
+               OutputStream entry = zip.putDeflatedEntry(String.valueOf(i), Deflater.DEFAULT_COMPRESSION);
+               entry.write(data);
+               entry.close();
+            }
+         }
+         zip.finish();
+      }
+      finally
+      {
+         out.close();
+      }
+
+      ZipFile zipFile = new ZipFile(file);
+      try
+      {
+         assertEquals(entries, zipFile.size());
+         ZipEntry last = zipFile.getEntry(String.valueOf(entries - 1));
+         assertNotNull(last);
+         InputStream inputStream = zipFile.getInputStream(last);
+         assertEquals("content", read(inputStream));
+         inputStream.close();
+      }
+      finally
+      {
+         zipFile.close();
+      }
+
+      ZipInputStream zis = new ZipInputStream(new FileInputStream(file));
+      try
+      {
+         int count = 0;
+         while (zis.getNextEntry() != null)
+         {
+            assertEquals("content", read(zis));
+            count++;
+         }
+         assertEquals(entries, count);
+      }
+      finally
+      {
+         zis.close();
+      }
+   }
+
+   @Test
+   public void testSpooled() throws Exception
+   {
+      SpoolDirectory spoolDirectory = new SpoolDirectory(folder.getRoot(), SpoolDirectory.NO_QUOTA);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      new ExportResourceModelMarshaller(spoolDirectory).marshal(model(), out, false);
+
+      assertZip(out.toByteArray());
+      assertEquals(0, spoolDirectory.getUsage());
+      assertEquals(0, countSpoolFiles(folder.getRoot()));
+   }
+
+   @Test
+   public void testSpooledFailure() throws Exception
+   {
+      SpoolDirectory spoolDirectory = new SpoolDirectory(folder.getRoot(), SpoolDirectory.NO_QUOTA);
+      ExportResourceModel model = model();
+      model.addTask(new ExportTask()
+      {
+         @Override
+         public String getEntry()
+         {
+            return "failure.xml";
+         }
+
+         @Override
+         public void export(OutputStream outputStream) throws IOException
+         {
+            throw new IOException("failure");
+         }
+      });
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      try
+      {
+         new ExportResourceModelMarshaller(spoolDirectory).marshal(model, out, false);
+         fail("Marshalling should fail");
+      }
+      catch (BindingException e)
+      {
+      }
+
+      assertEquals(0, out.size());
+      assertEquals(0, countSpoolFiles(folder.getRoot()));
+   }
+
+   @Test
+   public void testParallel() throws Exception
+   {
+      SpoolDirectory spoolDirectory = new SpoolDirectory(folder.getRoot(), SpoolDirectory.NO_QUOTA);
+      ExecutorService executor = Executors.newFixedThreadPool(2);
+      try
+      {
+         // A threshold of 8 bytes spills every buffer to the spool directory
+         ExportResourceModelMarshaller marshaller = new ExportResourceModelMarshaller(null, executor, 2, 8);
+         marshaller.setStreaming(true);
+         ByteArrayOutputStream out = new ByteArrayOutputStream();
+         marshaller.marshal(model(), out, false);
+         assertZip(out.toByteArray());
+
+         out = new ByteArrayOutputStream();
+         new ExportResourceModelMarshaller(spoolDirectory, executor, 2, 8).marshal(model(), out, false);
+         assertZip(out.toByteArray());
+         assertEquals(0, spoolDirectory.getUsage());
+         assertEquals(0, countSpoolFiles(folder.getRoot()));
+      }
+      finally
+      {
+         executor.shutdownNow();
+      }
+   }
+
+   @Test
+   public void testParallelFailure() throws Exception
+   {
+      SpoolDirectory spoolDirectory = new SpoolDirectory(folder.getRoot(), SpoolDirectory.NO_QUOTA);
+      ExportResourceModel model = model();
+      model.addTask(new ExportTask()
+      {
+         @Override
+         public String getEntry()
+         {
+            return "failure.xml";
+         }
+
+         @Override
+         public void export(OutputStream outputStream) throws IOException
+         {
+            throw new IOException("failure");
+         }
+      });
+
+      ExecutorService executor = Executors.newFixedThreadPool(2);
+      try
+      {
+         new ExportResourceModelMarshaller(spoolDirectory, executor, 4, 8).marshal(model, new ByteArrayOutputStream(), false);
+         fail("Marshalling should fail");
+      }
+      catch (BindingException e)
+      {
+         assertEquals("failure", e.getCause().getMessage());
+      }
+      finally
+      {
+         executor.shutdownNow();
+      }
+
+      assertEquals(0, spoolDirectory.getUsage());
+      assertEquals(0, countSpoolFiles(folder.getRoot()));
+   }
+
+   @Test
+   public void testCompression() throws Exception
+   {
+      ExportResourceModelMarshaller marshaller = new ExportResourceModelMarshaller();
+      assertEquals(ZipEntry.DEFLATED, assertZipFile(marshal(marshaller, model())));
+
+      ExportResourceModel model = model();
+      model.setCompressionLevel(Deflater.NO_COMPRESSION);
+      assertEquals(ZipEntry.STORED, assertZipFile(marshal(marshaller, model)));
+
+      model = model();
+      model.setCompressionLevel(Deflater.BEST_SPEED);
+      assertEquals(ZipEntry.DEFLATED, assertZipFile(marshal(marshaller, model)));
+
+      // Entries of the model are 9 bytes long
+      marshaller.setStoreThreshold(10);
+      assertEquals(ZipEntry.STORED, assertZipFile(marshal(marshaller, model())));
+      marshaller.setStoreThreshold(9);
+      assertEquals(ZipEntry.DEFLATED, assertZipFile(marshal(marshaller, model())));
+
+      marshaller.setCompressionLevel(Deflater.NO_COMPRESSION);
+      assertEquals(ZipEntry.STORED, assertZipFile(marshal(marshaller, model())));
+   }
+
+   @Test
+   public void testParallelCompression() throws Exception
+   {
+      ExecutorService executor = Executors.newFixedThreadPool(2);
+      try
+      {
+         ExportResourceModelMarshaller marshaller = new ExportResourceModelMarshaller(null, executor, 2);
+         assertEquals(ZipEntry.DEFLATED, assertZipFile(marshal(marshaller, model())));
+
+         marshaller.setStoreThreshold(10);
+         assertEquals(ZipEntry.STORED, assertZipFile(marshal(marshaller, model())));
+
+         marshaller.setStoreThreshold(0);
+         ExportResourceModel model = model();
+         model.setCompressionLevel(Deflater.NO_COMPRESSION);
+         assertEquals(ZipEntry.STORED, assertZipFile(marshal(marshaller, model)));
+      }
+      finally
+      {
+         executor.shutdownNow();
+      }
+   }
+
+   @Test
+   public void testParallelDeflate() throws Exception
+   {
+      // Some repetitive content spanning several blocks, with matches across block boundaries
+      Random random = new Random(42);
+      final byte[] content = new byte[ParallelDeflater.BLOCK_SIZE * 4 + 1234];
+      for (int i = 0; i < content.length; i++)
+      {
+         content[i] = (byte) ('a' + (i % 97 + random.nextInt(3)) % 26);
+      }
+
+      ExportResourceModel model = new ExportResourceModel(new ArrayList<ExportTask>());
+      model.addTask(new ExportTask()
+      {
+         @Override
+         public String getEntry()
+         {
+            return "large.xml";
+         }
+
+         @Override
+         public void export(OutputStream outputStream) throws IOException
+         {
+            outputStream.write(content);
+         }
+      });
+
+      ExecutorService executor = Executors.newFixedThreadPool(2);
+      try
+      {
+         ExportResourceModelMarshaller marshaller = new ExportResourceModelMarshaller(null, executor, 2);
+         marshaller.setParallelDeflateThreshold(ParallelDeflater.BLOCK_SIZE);
+         ByteArrayOutputStream out = new ByteArrayOutputStream();
+         marshaller.marshal(model, out, false);
+
+         ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()));
+         ZipEntry entry = zis.getNextEntry();
+         assertEquals("large.xml", entry.getName());
+         assertEquals(ZipEntry.DEFLATED, entry.getMethod());
+
+         ByteArrayOutputStream data = new ByteArrayOutputStream();
+         byte[] buffer = new byte[4096];
+         int read;
+         while ((read = zis.read(buffer)) != -1)
+         {
+            data.write(buffer, 0, read);
+         }
+         assertTrue(Arrays.equals(content, data.toByteArray()));
+         assertTrue(zis.getNextEntry() == null);
+      }
+      finally
+      {
+         executor.shutdownNow();
+      }
+   }
+
+   @Test
+   public void testParseCompressionLevel()
+   {
+      assertEquals(Deflater.DEFAULT_COMPRESSION, ExportResourceModelMarshaller.parseCompressionLevel("default"));
+      assertEquals(Deflater.NO_COMPRESSION, ExportResourceModelMarshaller.parseCompressionLevel("stored"));
+      assertEquals(Deflater.BEST_SPEED, ExportResourceModelMarshaller.parseCompressionLevel("FASTEST"));
+      assertEquals(Deflater.BEST_COMPRESSION, ExportResourceModelMarshaller.parseCompressionLevel("best"));
+      assertEquals(5, ExportResourceModelMarshaller.parseCompressionLevel(" 5 "));
+
+      for (String value : new String[]{"10", "-2", "fast"})
+      {
+         try
+         {
+            ExportResourceModelMarshaller.parseCompressionLevel(value);
+            fail("Compression level " + value + " should be invalid");
+         }
+         catch (IllegalArgumentException e)
+         {
+         }
+      }
+   }
+
+   private byte[] marshal(ExportResourceModelMarshaller marshaller, ExportResourceModel model) throws Exception
+   {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      marshaller.marshal(model, out, false);
+      byte[] data = out.toByteArray();
+      assertZip(data);
+      return data;
+   }
+
+   /**
+    * Reads the archive through its central directory.
+    *
+    * @return the compression method of the entries
+    */
+   private int assertZipFile(byte[] data) throws IOException
+   {
+      File file = folder.newFile("export.zip");
+      try
+      {
+         FileOutputStream out = new FileOutputStream(file);
+         out.write(data);
+         out.close();
+
+         ZipFile zip = new ZipFile(file);
+         try
+         {
+            int method = -1;
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            for (int i = 0; i < 3; i++)
+            {
+               ZipEntry entry = entries.nextElement();
+               assertEquals("entry-" + i + ".xml", entry.getName());
+               assertEquals(9, entry.getSize());
+               assertTrue(method == -1 || method == entry.getMethod());
+               method = entry.getMethod();
+
+               InputStream in = zip.getInputStream(entry);
+               byte[] content = new byte[9];
+               assertEquals(9, in.read(content));
+               assertEquals("content " + i, new String(content, "UTF-8"));
+               in.close();
+            }
+            assertFalse(entries.hasMoreElements());
+            return method;
+         }
+         finally
+         {
+            zip.close();
+         }
+      }
+      finally
+      {
+         file.delete();
+      }
+   }
+
+   private static void assertZip(byte[] data) throws IOException
+   {
+      ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(data));
+      for (int i = 0; i < 3; i++)
+      {
+         ZipEntry entry = zis.getNextEntry();
+         assertNotNull(entry);
+         assertEquals("entry-" + i + ".xml", entry.getName());
+
+         assertEquals("content " + i, read(zis));
+      }
+      assertNull(zis.getNextEntry());
+   }
+
+   private static String read(InputStream inputStream) throws IOException
+   {
+      ByteArrayOutputStream content = new ByteArrayOutputStream();
+      byte[] buffer = new byte[256];
+      int read;
+      while ((read = inputStream.read(buffer)) != -1)
+      {
+         content.write(buffer, 0, read);
+      }
+      return content.toString("UTF-8");
+   }
+
+   private static ExportResourceModel model()
+   {
+      ExportResourceModel model = new ExportResourceModel(new ArrayList<ExportTask>());
+      for (int i = 0; i < 3; i++)
+      {
+         final int index = i;
+         model.addTask(new ExportTask()
+         {
+            @Override
+            public String getEntry()
+            {
+               return "entry-" + index + ".xml";
+            }
+
+            @Override
+            public void export(OutputStream outputStream) throws IOException
+            {
+               outputStream.write(("content " + index).getBytes("UTF-8"));
+            }
+         });
+      }
+      return model;
+   }
+
+   private static int countSpoolFiles(File dir)
+   {
+      int count = 0;
+      for (File file : dir.listFiles())
+      {
+         if (file.isDirectory())
+         {
+            count += countSpoolFiles(file);
+         }
+         else if (!file.getName().equals(".lock"))
+         {
+            count++;
+         }
+      }
+
+      return count;
+   }
+}
@@ -0,0 +1,285 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.core.api.binding.zip;
+
+import org.gatein.management.api.binding.SpoolDirectory;
+import org.gatein.management.api.operation.model.ImportResourceModel;
+import org.gatein.management.api.operation.model.ImportTask;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
+ * @version $Revision$
+ */
+public class ImportResourceModelMarshallerTest
+{
+   @Rule
+   public TemporaryFolder folder = new TemporaryFolder();
+
+   @Test
+   public void testImportEntries() throws Exception
+   {
+      ImportResourceModel model = new ImportResourceModelMarshaller().unmarshal(zip(
+         "portal/classic/portal.xml", "portal/classic/pages.xml", "portal/classic/navigation.xml",
+         "group/platform/administrators/pages.xml", "README"));
+
+      List<String> pages = new ArrayList<String>();
+      List<String> other = new ArrayList<String>();
+      model.addTask(task("portal/*/pages.xml", pages));
+      model.addTask(task("group/**/pages.xml", pages));
+      model.addTask(task("portal/**", other));
+
+      assertEquals(Arrays.asList("README"), model.importEntries());
+      assertEquals(Arrays.asList("portal/classic/pages.xml", "group/platform/administrators/pages.xml"), pages);
+      assertEquals(Arrays.asList("portal/classic/portal.xml", "portal/classic/navigation.xml"), other);
+   }
+
+   @Test(expected = IllegalStateException.class)
+   public void testImportOnce() throws Exception
+   {
+      ImportResourceModel model = new ImportResourceModelMarshaller().unmarshal(zip("portal/classic/pages.xml"));
+      model.importEntries();
+      model.importEntries();
+   }
+
+   @Test
+   public void testRandomAccess() throws Exception
+   {
+      SpoolDirectory spoolDirectory = new SpoolDirectory(folder.getRoot(), SpoolDirectory.NO_QUOTA);
+      ImportResourceModel model = new ImportResourceModelMarshaller(spoolDirectory, ImportResourceModelMarshaller.NO_LIMIT).unmarshal(zip(
+         "portal/classic/pages.xml", "portal/classic/navigation.xml", "manifest.xml"));
+
+      // Read the manifest before importing anything
+      assertEquals(Arrays.asList("portal/classic/pages.xml", "portal/classic/navigation.xml", "manifest.xml"), model.getEntries());
+      InputStream manifest = model.getInputStream("manifest.xml");
+      assertEquals("manifest.xml", read(manifest));
+      manifest.close();
+      assertNull(model.getInputStream("missing.xml"));
+
+      List<String> imported = Collections.synchronizedList(new ArrayList<String>());
+      model.addTask(task("portal/**", imported));
+      ExecutorService executor = Executors.newFixedThreadPool(2);
+      try
+      {
+         assertEquals(Arrays.asList("manifest.xml"), model.importEntries(executor));
+      }
+      finally
+      {
+         executor.shutdownNow();
+      }
+      assertEquals(new HashSet<String>(Arrays.asList("portal/classic/pages.xml", "portal/classic/navigation.xml")), new HashSet<String>(imported));
+
+      // Spool file is removed once imported
+      assertEquals(0, spoolDirectory.getUsage());
+      assertEquals(0, countSpoolFiles(folder.getRoot()));
+   }
+
+   @Test
+   public void testFailureWaitsForRunningImports() throws Exception
+   {
+      SpoolDirectory spoolDirectory = new SpoolDirectory(folder.getRoot(), SpoolDirectory.NO_QUOTA);
+      ImportResourceModel model = new ImportResourceModelMarshaller(spoolDirectory, ImportResourceModelMarshaller.NO_LIMIT).unmarshal(zip("failure.xml", "slow.xml"));
+
+      final AtomicBoolean started = new AtomicBoolean();
+      final AtomicBoolean failed = new AtomicBoolean();
+      final AtomicReference<Object> slowResult = new AtomicReference<Object>();
+      model.addTask(new ImportTask()
+      {
+         @Override
+         public String getEntry()
+         {
+            return "slow.xml";
+         }
+
+         @Override
+         public void importEntry(String entry, InputStream inputStream) throws IOException
+         {
+            started.set(true);
+
+            // Keep reading well after the sibling failed, without reacting to the interrupt of the cancellation
+            long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (!failed.get() && System.nanoTime() < end)
+            {
+               Thread.yield();
+            }
+            end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(300);
+            while (System.nanoTime() < end)
+            {
+               Thread.yield();
+            }
+
+            try
+            {
+               slowResult.set(read(inputStream));
+            }
+            catch (IOException e)
+            {
+               slowResult.set(e);
+            }
+         }
+      });
+      model.addTask(new ImportTask()
+      {
+         @Override
+         public String getEntry()
+         {
+            return "failure.xml";
+         }
+
+         @Override
+         public void importEntry(String entry, InputStream inputStream) throws IOException
+         {
+            long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (!started.get() && System.nanoTime() < end)
+            {
+               Thread.yield();
+            }
+            failed.set(true);
+            throw new IOException("failure");
+         }
+      });
+
+      ExecutorService executor = Executors.newFixedThreadPool(2);
+      try
+      {
+         model.importEntries(executor);
+         fail("Import should fail");
+      }
+      catch (IOException e)
+      {
+         assertEquals("failure", e.getMessage());
+      }
+      finally
+      {
+         executor.shutdownNow();
+      }
+
+      // The archive was still open while the slow import was reading
+      assertEquals("slow.xml", slowResult.get());
+   }
+
+   @Test
+   public void testMaxSize() throws Exception
+   {
+      SpoolDirectory spoolDirectory = new SpoolDirectory(folder.getRoot(), SpoolDirectory.NO_QUOTA);
+      ImportResourceModel model = new ImportResourceModelMarshaller(spoolDirectory, 16).unmarshal(zip("portal/classic/pages.xml"));
+      try
+      {
+         model.getEntries();
+         fail("Import should exceed the maximum size");
+      }
+      catch (IOException e)
+      {
+      }
+      assertEquals(0, countSpoolFiles(folder.getRoot()));
+   }
+
+   private static ImportTask task(final String entry, final List<String> imported)
+   {
+      return new ImportTask()
+      {
+         @Override
+         public String getEntry()
+         {
+            return entry;
+         }
+
+         @Override
+         public void importEntry(String entry, InputStream inputStream) throws IOException
+         {
+            assertEquals(entry, read(inputStream));
+
+            // Must not close the archive
+            inputStream.close();
+            imported.add(entry);
+         }
+      };
+   }
+
+   private static String read(InputStream inputStream) throws IOException
+   {
+      ByteArrayOutputStream content = new ByteArrayOutputStream();
+      byte[] buffer = new byte[256];
+      int read;
+      while ((read = inputStream.read(buffer)) != -1)
+      {
+         content.write(buffer, 0, read);
+      }
+      return content.toString("UTF-8");
+   }
+
+   private static InputStream zip(String... entries) throws IOException
+   {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      ZipOutputStream zos = new ZipOutputStream(out);
+      for (String entry : entries)
+      {
+         zos.putNextEntry(new ZipEntry(entry));
+         zos.write(entry.getBytes("UTF-8"));
+         zos.closeEntry();
+      }
+      zos.close();
+
+      return new ByteArrayInputStream(out.toByteArray());
+   }
+
+   private static int countSpoolFiles(File dir)
+   {
+      int count = 0;
+      for (File file : dir.listFiles())
+      {
+         if (file.isDirectory())
+         {
+            count += countSpoolFiles(file);
+         }
+         else if (!file.getName().equals(".lock"))
+         {
+            count++;
+         }
+      }
+
+      return count;
+   }
+}
@@ -0,0 +1,68 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.core.api.controller;
+
+import org.gatein.management.api.ContentType;
+import org.gatein.management.api.binding.BindingProvider;
+import org.gatein.management.api.binding.Marshaller;
+import org.gatein.management.api.model.ModelValue;
+import org.gatein.management.api.operation.model.ImportResourceModel;
+import org.junit.Test;
+
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
+ * @version $Revision$
+ */
+public class RequestBindingProviderTest
+{
+   @Test
+   @SuppressWarnings("unchecked")
+   public void testCloseImports() throws Exception
+   {
+      ImportResourceModel model = mock(ImportResourceModel.class);
+      InputStream inputStream = mock(InputStream.class);
+      Marshaller<ImportResourceModel> marshaller = mock(Marshaller.class);
+      when(marshaller.unmarshal(inputStream)).thenReturn(model);
+      Marshaller<ModelValue> modelMarshaller = mock(Marshaller.class);
+      BindingProvider bindingProvider = mock(BindingProvider.class);
+      when(bindingProvider.getMarshaller(ImportResourceModel.class, ContentType.ZIP)).thenReturn(marshaller);
+      when(bindingProvider.getMarshaller(ModelValue.class, ContentType.JSON)).thenReturn(modelMarshaller);
+
+      RequestBindingProvider requestBindingProvider = new RequestBindingProvider(bindingProvider);
+      assertSame(modelMarshaller, requestBindingProvider.getMarshaller(ModelValue.class, ContentType.JSON));
+      assertSame(model, requestBindingProvider.getMarshaller(ImportResourceModel.class, ContentType.ZIP).unmarshal(inputStream));
+      verify(model, never()).close();
+
+      requestBindingProvider.close();
+      verify(model, times(1)).close();
+
+      // Models are only closed once
+      requestBindingProvider.close();
+      verify(model, times(1)).close();
+   }
+}
@@ -0,0 +1,96 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.core.api.controller;
+
+import org.gatein.management.api.ExternalContext;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
+ * @version $Revision$
+ */
+public class RequestExternalContextTest
+{
+   @Test
+   public void testRequestCache()
+   {
+      ExternalContext externalContext = mock(ExternalContext.class);
+      when(externalContext.isUserInRole("roleA")).thenReturn(true);
+      when(externalContext.isUserInRole("roleB")).thenReturn(false);
+
+      ExternalContext context = new RequestExternalContext(externalContext, null);
+      for (int i = 0; i < 3; i++)
+      {
+         assertTrue(context.isUserInRole("roleA"));
+         assertFalse(context.isUserInRole("roleB"));
+      }
+      verify(externalContext, times(1)).isUserInRole("roleA");
+      verify(externalContext, times(1)).isUserInRole("roleB");
+      verify(externalContext, never()).getRemoteUser();
+
+      // A new request checks again
+      context = new RequestExternalContext(externalContext, null);
+      assertTrue(context.isUserInRole("roleA"));
+      verify(externalContext, times(2)).isUserInRole("roleA");
+   }
+
+   @Test
+   public void testSharedCache() throws Exception
+   {
+      AuthorizationCache cache = new AuthorizationCache(10, 50);
+      ExternalContext john = mock(ExternalContext.class);
+      when(john.getRemoteUser()).thenReturn("john");
+      when(john.isUserInRole("roleA")).thenReturn(true);
+      ExternalContext mary = mock(ExternalContext.class);
+      when(mary.getRemoteUser()).thenReturn("mary");
+      when(mary.isUserInRole("roleA")).thenReturn(false);
+
+      assertTrue(new RequestExternalContext(john, cache).isUserInRole("roleA"));
+      assertTrue(new RequestExternalContext(john, cache).isUserInRole("roleA"));
+      verify(john, times(1)).isUserInRole("roleA");
+
+      // Decisions are keyed by user
+      assertFalse(new RequestExternalContext(mary, cache).isUserInRole("roleA"));
+      verify(mary, times(1)).isUserInRole("roleA");
+
+      // Decisions expire
+      Thread.sleep(100);
+      assertTrue(new RequestExternalContext(john, cache).isUserInRole("roleA"));
+      verify(john, times(2)).isUserInRole("roleA");
+   }
+
+   @Test
+   public void testAnonymousNotShared()
+   {
+      AuthorizationCache cache = new AuthorizationCache(10, 60000);
+      ExternalContext externalContext = mock(ExternalContext.class);
+      when(externalContext.isUserInRole("roleA")).thenReturn(false);
+
+      assertFalse(new RequestExternalContext(externalContext, cache).isUserInRole("roleA"));
+      assertFalse(new RequestExternalContext(externalContext, cache).isUserInRole("roleA"));
+      verify(externalContext, times(2)).isUserInRole("roleA");
+   }
+}
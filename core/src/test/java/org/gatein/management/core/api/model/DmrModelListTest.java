@@ -33,6 +33,7 @@ import org.junit.Test;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.List;
 
 import static org.junit.Assert.*;
 
@@ -142,6 +143,68 @@ public class DmrModelListTest
       fail("Should not be able to cast different elements in list to ModelNumber");
    }
 
+   @Test
+   public void testLiveValues()
+   {
+      ModelList list = modelList();
+      List<ModelValue> values = list.getValues();
+      assertTrue(values.isEmpty());
+
+      list.add(1).add("2");
+      assertEquals(2, values.size());
+      assertEquals("2", values.get(1).asValue(ModelString.class).getValue());
+
+      try
+      {
+         values.add(list.get(0));
+         fail("Values of a list should be read-only");
+      }
+      catch (UnsupportedOperationException e)
+      {
+      }
+   }
+
+   @Test
+   public void testIndexOutOfBounds()
+   {
+      ModelList list = modelList().add(1);
+      for (int index : new int[]{-1, 1})
+      {
+         try
+         {
+            list.get(index);
+            fail("Expected IndexOutOfBoundsException for index " + index);
+         }
+         catch (IndexOutOfBoundsException e)
+         {
+         }
+      }
+      assertEquals(1, list.size());
+   }
+
+   @Test
+   public void testLargeList()
+   {
+      ModelList list = modelList();
+      for (int i = 0; i < 10000; i++)
+      {
+         list.add(i);
+      }
+
+      assertEquals(10000, list.size());
+      for (int i = 0; i < list.size(); i++)
+      {
+         assertEquals(i, list.get(i, ModelNumber.class).getInt());
+      }
+
+      int index = 0;
+      for (ModelValue value : list)
+      {
+         assertEquals(index++, value.asValue(ModelNumber.class).getInt());
+      }
+      assertEquals(10000, index);
+   }
+
    private static ModelList modelList()
    {
       return new DmrModelList(new ModelNode());
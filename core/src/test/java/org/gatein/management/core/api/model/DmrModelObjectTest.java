@@ -23,12 +23,14 @@
 package org.gatein.management.core.api.model;
 
 import org.gatein.management.api.PathAddress;
+import org.gatein.management.api.model.Model;
 import org.gatein.management.api.model.ModelBoolean;
 import org.gatein.management.api.model.ModelList;
 import org.gatein.management.api.model.ModelNumber;
 import org.gatein.management.api.model.ModelObject;
 import org.gatein.management.api.model.ModelReference;
 import org.gatein.management.api.model.ModelString;
+import org.gatein.management.api.model.ModelValue;
 import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
@@ -263,6 +265,36 @@ public class DmrModelObjectTest
       assertEquals(one, four);
    }
 
+   @Test
+   public void testViews()
+   {
+      ModelObject model = modelObject().set("foo", "bar");
+      model.get("list").setEmptyList().add(1);
+      model.get("ref").set(PathAddress.pathAddress("a", "b"));
+
+      // Typed values are returned as is
+      assertTrue(model.get("foo", ModelValue.class) instanceof ModelString);
+      assertTrue(model.get("list", ModelValue.class) instanceof ModelList);
+      assertTrue(model.get("ref", ModelValue.class) instanceof ModelReference);
+      assertTrue(model.get("foo", Model.class) instanceof Model);
+      assertTrue(model.get("undefined", ModelValue.class) instanceof Model);
+
+      // Views are reused until the type of the value changes
+      Model foo = model.get("foo");
+      ModelString string = foo.asValue(ModelString.class);
+      assertSame(string, foo.asValue(ModelString.class));
+      foo.set(3);
+      assertEquals(3, foo.asValue(ModelNumber.class).getInt());
+      try
+      {
+         foo.asValue(ModelString.class);
+         fail("Value is no longer a string");
+      }
+      catch (IllegalArgumentException e)
+      {
+      }
+   }
+
    private static ModelObject modelObject()
    {
       return new DmrModelObject();
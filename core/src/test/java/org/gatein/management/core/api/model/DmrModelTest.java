@@ -24,11 +24,13 @@ package org.gatein.management.core.api.model;
 
 import org.gatein.management.api.PathAddress;
 import org.gatein.management.api.model.Model;
+import org.gatein.management.api.model.ModelList;
 import org.gatein.management.api.model.ModelNumber;
 import org.gatein.management.api.model.ModelValue;
 import org.jboss.dmr.ModelNode;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 
@@ -132,6 +134,23 @@ public class DmrModelTest
       assertEquals(ModelValue.ModelValueType.REFERENCE, newModel().set(PathAddress.pathAddress("foo", "bar")).getValueType());
    }
 
+   @Test
+   public void testJsonStream() throws Exception
+   {
+      ModelList list = newModel().setEmptyList();
+      for (int i = 0; i < 2000; i++)
+      {
+         list.add().setEmptyObject().set("name", "user-" + i).set("display-name", "J\u00fcrgen \u20ac\ud834\udd1e " + i).set("index", i);
+      }
+
+      for (boolean pretty : new boolean[]{false, true})
+      {
+         ByteArrayOutputStream out = new ByteArrayOutputStream();
+         list.toJsonStream(out, pretty);
+         assertEquals(list.toJsonString(pretty), out.toString("UTF-8"));
+      }
+   }
+
    private static Model newModel()
    {
       return new DmrModel(new ModelNode());
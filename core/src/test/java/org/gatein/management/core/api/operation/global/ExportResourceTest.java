@@ -0,0 +1,247 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.core.api.operation.global;
+
+import org.gatein.management.api.ManagedDescription;
+import org.gatein.management.api.ManagedResource;
+import org.gatein.management.api.PathAddress;
+import org.gatein.management.api.exceptions.OperationException;
+import org.gatein.management.api.operation.OperationAttributes;
+import org.gatein.management.api.operation.OperationContext;
+import org.gatein.management.api.operation.OperationHandler;
+import org.gatein.management.api.operation.OperationNames;
+import org.gatein.management.api.operation.QueryOperationHandler;
+import org.gatein.management.api.operation.model.ExportResourceModel;
+import org.gatein.management.api.operation.model.ExportTask;
+import org.gatein.management.api.operation.model.ReadResourceModel;
+import org.gatein.management.core.api.SimpleManagedResource;
+import org.gatein.management.core.api.operation.BasicResultHandler;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
+ * @version $Revision$
+ */
+public class ExportResourceTest
+{
+   @Test
+   public void testSequentialExport()
+   {
+      List<String> entries = export(createRootResource(null), null);
+      assertEquals(expectedEntries(), entries);
+   }
+
+   @Test
+   public void testParallelExport()
+   {
+      assertEquals(expectedEntries(), export(createRootResource(null), "true"));
+      assertEquals(expectedEntries(), export(createRootResource(null), "3"));
+   }
+
+   @Test
+   public void testParallelExportFailure()
+   {
+      try
+      {
+         export(createRootResource("site-7"), "4");
+         fail("Export should fail");
+      }
+      catch (OperationException e)
+      {
+         assertTrue(e.getMessage(), e.getMessage().endsWith("[Step Address: /sites/site-7]"));
+      }
+   }
+
+   @Test
+   public void testSequentialExportFailure()
+   {
+      try
+      {
+         exportModel(createRootResource("site-7"), null, null);
+         fail("Export should fail");
+      }
+      catch (OperationException e)
+      {
+         assertTrue(e.getMessage(), e.getMessage().endsWith("[Step Address: /sites/site-7]"));
+      }
+   }
+
+   @Test
+   public void testLazyExport()
+   {
+      assertFalse(exportModel(createRootResource(null), null, null).isLazy());
+      assertEquals(expectedEntries(), export(exportModel(createRootResource(null), null, "true")));
+
+      // Sites are only exported while the tasks are iterated, so the failure surfaces once site-7 is reached
+      ExportResourceModel model = exportModel(createRootResource("site-7"), null, "true");
+      assertTrue(model.isLazy());
+      List<String> entries = new ArrayList<String>();
+      try
+      {
+         for (ExportTask task : model)
+         {
+            entries.add(task.getEntry());
+         }
+         fail("Export should fail");
+      }
+      catch (OperationException e)
+      {
+         assertTrue(e.getMessage(), e.getMessage().endsWith("[Step Address: /sites/site-7]"));
+      }
+      assertEquals(expectedEntries().subList(0, 14), entries);
+   }
+
+   @Test(expected = OperationException.class)
+   public void testInvalidParallelism()
+   {
+      export(createRootResource(null), "none");
+   }
+
+   @Test(expected = OperationException.class)
+   public void testParallelStreaming()
+   {
+      exportModel(createRootResource(null), "2", "true");
+   }
+
+   private List<String> export(SimpleManagedResource root, String parallel)
+   {
+      return export(exportModel(root, parallel, null));
+   }
+
+   private List<String> export(ExportResourceModel model)
+   {
+      List<String> entries = new ArrayList<String>();
+      for (ExportTask task : model.getTasks())
+      {
+         entries.add(task.getEntry());
+      }
+      return entries;
+   }
+
+   private ExportResourceModel exportModel(SimpleManagedResource root, String parallel, String streaming)
+   {
+      OperationAttributes attributes = mock(OperationAttributes.class);
+      when(attributes.getValue(ExportResource.PARALLEL_ATTRIBUTE)).thenReturn(parallel);
+      when(attributes.getValue(ExportResource.STREAMING_ATTRIBUTE)).thenReturn(streaming);
+
+      OperationContext operationContext = mock(OperationContext.class);
+      when(operationContext.getManagedResource()).thenReturn(root);
+      when(operationContext.getAddress()).thenReturn(PathAddress.pathAddress("sites"));
+      when(operationContext.getOperationName()).thenReturn(OperationNames.EXPORT_RESOURCE);
+      when(operationContext.getAttributes()).thenReturn(attributes);
+
+      BasicResultHandler resultHandler = new BasicResultHandler();
+      GlobalOperationHandlers.EXPORT_RESOURCE.execute(operationContext, resultHandler);
+
+      return (ExportResourceModel) resultHandler.getResult();
+   }
+
+   private static List<String> expectedEntries()
+   {
+      List<String> entries = new ArrayList<String>();
+      for (int i = 0; i < 20; i++)
+      {
+         entries.add("site-" + i + "/pages.xml");
+         entries.add("site-" + i + "/navigation.xml");
+      }
+      return entries;
+   }
+
+   private static SimpleManagedResource createRootResource(final String failingSite)
+   {
+      SimpleManagedResource root = new SimpleManagedResource(null, null, description("root"));
+      root.registerOperationHandler(OperationNames.READ_RESOURCE, GlobalOperationHandlers.READ_RESOURCE, description("read resource"), true);
+      root.registerOperationHandler(OperationNames.EXPORT_RESOURCE, GlobalOperationHandlers.EXPORT_RESOURCE, ExportResource.DESCRIPTION, true);
+
+      ManagedResource.Registration sites = root.registerSubResource("sites", description("sites"));
+      sites.registerOperationHandler(OperationNames.READ_RESOURCE, new QueryOperationHandler<ReadResourceModel>()
+      {
+         @Override
+         protected ReadResourceModel execute(OperationContext operationContext)
+         {
+            Set<String> children = new LinkedHashSet<String>();
+            for (int i = 0; i < 20; i++)
+            {
+               children.add("site-" + i);
+            }
+            return new ReadResourceModel("sites", children);
+         }
+      }, description("read sites"));
+
+      ManagedResource.Registration site = sites.registerSubResource("{site-name}", description("site"));
+      site.registerOperationHandler(OperationNames.EXPORT_RESOURCE, new QueryOperationHandler<ExportResourceModel>()
+      {
+         @Override
+         protected ExportResourceModel execute(OperationContext operationContext)
+         {
+            String siteName = operationContext.getAddress().resolvePathTemplate("site-name");
+            if (siteName.equals(failingSite)) throw new RuntimeException("Cannot export " + siteName);
+
+            // Give other threads a chance to finish first
+            Thread.yield();
+            return new ExportResourceModel(task(siteName + "/pages.xml"), task(siteName + "/navigation.xml"));
+         }
+      }, description("export site"));
+
+      return root;
+   }
+
+   private static ExportTask task(final String entry)
+   {
+      return new ExportTask()
+      {
+         @Override
+         public String getEntry()
+         {
+            return entry;
+         }
+
+         @Override
+         public void export(OutputStream outputStream) throws IOException
+         {
+         }
+      };
+   }
+
+   private static ManagedDescription description(final String description)
+   {
+      return new ManagedDescription()
+      {
+         @Override
+         public String getDescription()
+         {
+            return description;
+         }
+      };
+   }
+}
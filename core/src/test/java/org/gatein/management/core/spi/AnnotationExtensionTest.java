@@ -34,6 +34,7 @@ import org.gatein.management.api.annotations.ManagedBefore;
 import org.gatein.management.api.annotations.ManagedContext;
 import org.gatein.management.api.annotations.ManagedOperation;
 import org.gatein.management.api.annotations.ManagedRole;
+import org.gatein.management.api.annotations.ManagedScope;
 import org.gatein.management.api.annotations.MappedAttribute;
 import org.gatein.management.api.annotations.MappedPath;
 import org.gatein.management.api.exceptions.NotAuthorizedException;
@@ -60,6 +61,12 @@ import org.mockito.stubbing.Answer;
 
 import java.io.ByteArrayInputStream;
 import java.math.BigInteger;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
@@ -514,6 +521,98 @@ public class AnnotationExtensionTest
       verify(unSecureService, never()).securedByRoleB();
    }
 
+   @Test
+   public void testScopes()
+   {
+      SimpleManagedResource rootResource = new SimpleManagedResource(null, null, null);
+      ExtensionContext context = new ExtensionContextImpl(rootResource, new ManagementProviders());
+      context.registerManagedComponent(RequestScopedService.class);
+      context.registerManagedComponent(SingletonScopedService.class);
+      context.registerManagedComponent(PooledScopedService.class);
+
+      Object first = execute(rootResource, OperationNames.READ_RESOURCE, "request-scoped").getResult();
+      Object second = execute(rootResource, OperationNames.READ_RESOURCE, "request-scoped").getResult();
+      assertTrue(first instanceof RequestScopedService);
+      assertNotSame(first, second);
+
+      first = execute(rootResource, OperationNames.READ_RESOURCE, "singleton-scoped").getResult();
+      second = execute(rootResource, OperationNames.READ_RESOURCE, "singleton-scoped").getResult();
+      assertTrue(first instanceof SingletonScopedService);
+      assertSame(first, second);
+
+      first = execute(rootResource, OperationNames.READ_RESOURCE, "pooled-scoped").getResult();
+      second = execute(rootResource, OperationNames.READ_RESOURCE, "pooled-scoped").getResult();
+      assertTrue(first instanceof PooledScopedService);
+      assertSame(first, second);
+      assertEquals(2, ((PooledScopedService) first).invocations);
+   }
+
+   @Test
+   public void testConcurrentScopes() throws Exception
+   {
+      SimpleManagedResource rootResource = new SimpleManagedResource(null, null, null);
+      ExtensionContext context = new ExtensionContextImpl(rootResource, new ManagementProviders());
+      context.registerManagedComponent(BlockingRequestScopedService.class);
+      context.registerManagedComponent(BlockingPooledScopedService.class);
+
+      Object[] instances = executeConcurrently(rootResource, "blocking-request-scoped");
+      assertTrue(instances[0] instanceof BlockingRequestScopedService);
+      assertTrue(instances[1] instanceof BlockingRequestScopedService);
+      assertNotSame(instances[0], instances[1]);
+
+      // A pooled instance is never handed to a second invocation while the first one still uses it
+      instances = executeConcurrently(rootResource, "blocking-pooled-scoped");
+      assertTrue(instances[0] instanceof BlockingPooledScopedService);
+      assertTrue(instances[1] instanceof BlockingPooledScopedService);
+      assertNotSame(instances[0], instances[1]);
+
+      // Both instances were returned to the pool
+      BlockingService.entered = new CountDownLatch(1);
+      BlockingService.proceed = new CountDownLatch(0);
+      Object next = execute(rootResource, OperationNames.READ_RESOURCE, "blocking-pooled-scoped").getResult();
+      assertTrue(next == instances[0] || next == instances[1]);
+   }
+
+   /**
+    * Executes two invocations of the blocking service at the given path, which are both inside the managed method at
+    * the same time before either of them returns.
+    *
+    * @return the instances the invocations ran on
+    */
+   private Object[] executeConcurrently(final ManagedResource resource, final String path) throws Exception
+   {
+      BlockingService.entered = new CountDownLatch(2);
+      BlockingService.proceed = new CountDownLatch(1);
+      BlockingService.shared = false;
+
+      ExecutorService executor = Executors.newFixedThreadPool(2);
+      try
+      {
+         Callable<Object> invocation = new Callable<Object>()
+         {
+            @Override
+            public Object call() throws Exception
+            {
+               return execute(resource, OperationNames.READ_RESOURCE, path).getResult();
+            }
+         };
+         Future<Object> first = executor.submit(invocation);
+         Future<Object> second = executor.submit(invocation);
+
+         assertTrue("Invocations did not run concurrently", BlockingService.entered.await(10, TimeUnit.SECONDS));
+         BlockingService.proceed.countDown();
+
+         Object[] instances = new Object[]{first.get(10, TimeUnit.SECONDS), second.get(10, TimeUnit.SECONDS)};
+         assertFalse("Invocations ran on the same instance", BlockingService.shared);
+         return instances;
+      }
+      finally
+      {
+         BlockingService.proceed.countDown();
+         executor.shutdownNow();
+      }
+   }
+
    private BasicResultHandler execute(ManagedResource resource, String opName, String...path)
    {
       return execute(resource, opName, PathAddress.pathAddress(path));
@@ -650,4 +749,71 @@ public class AnnotationExtensionTest
       @ManagedRole("roleB")
       public void securedByRoleB();
    }
+
+   @Managed("request-scoped")
+   public static class RequestScopedService
+   {
+      @Managed
+      public Object self()
+      {
+         return this;
+      }
+   }
+
+   @Managed("singleton-scoped")
+   @ManagedScope(ManagedScope.Scope.SINGLETON)
+   public static class SingletonScopedService
+   {
+      @Managed
+      public Object self()
+      {
+         return this;
+      }
+   }
+
+   @Managed("pooled-scoped")
+   @ManagedScope(ManagedScope.Scope.POOLED)
+   public static class PooledScopedService
+   {
+      private int invocations;
+
+      @Managed
+      public Object self()
+      {
+         invocations++;
+         return this;
+      }
+   }
+
+   public static class BlockingService
+   {
+      private static volatile CountDownLatch entered;
+      private static volatile CountDownLatch proceed;
+      private static volatile boolean shared;
+
+      private volatile Thread thread;
+
+      @Managed
+      public Object self() throws InterruptedException
+      {
+         thread = Thread.currentThread();
+         entered.countDown();
+         proceed.await();
+
+         // Another invocation running on the same instance would have replaced the thread
+         if (thread != Thread.currentThread()) shared = true;
+         return this;
+      }
+   }
+
+   @Managed("blocking-request-scoped")
+   public static class BlockingRequestScopedService extends BlockingService
+   {
+   }
+
+   @Managed("blocking-pooled-scoped")
+   @ManagedScope(ManagedScope.Scope.POOLED)
+   public static class BlockingPooledScopedService extends BlockingService
+   {
+   }
 }
@@ -53,6 +53,8 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 import javax.ws.rs.core.Variant;
+import java.io.Closeable;
+import java.io.IOException;
 import java.io.InputStream;
 
 import static javax.ws.rs.core.Response.*;
@@ -476,16 +478,34 @@ public class RestController
       }
       else if (result instanceof NoResultModel)
       {
+         close(response);
          return Response.ok().type(mediaType).build();
       }
       else
       {
+         // Written, and closed, by the ManagedResponseWriter
          return Response.ok(response).type(mediaType).build();
       }
 
+      close(response);
       return Response.ok(result).type(mediaType).build();
    }
 
+   private static void close(ManagedResponse response)
+   {
+      if (response instanceof Closeable)
+      {
+         try
+         {
+            ((Closeable) response).close();
+         }
+         catch (IOException e)
+         {
+            log.error("Could not close response " + response, e);
+         }
+      }
+   }
+
    private Response validateRequest(HttpManagedRequest request)
    {
       String operationName = request.getOperationName();
@@ -22,13 +22,11 @@
 
 package org.gatein.management.rest.providers;
 
+import org.gatein.management.api.binding.JsonStreamWriter;
 import org.gatein.management.rest.content.Child;
 import org.gatein.management.rest.content.Link;
 import org.gatein.management.rest.content.Operation;
 import org.gatein.management.rest.content.Resource;
-import org.json.JSONException;
-import org.json.JSONObject;
-import org.json.JSONWriter;
 
 import javax.ws.rs.Produces;
 import javax.ws.rs.WebApplicationException;
@@ -36,17 +34,10 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.ext.MessageBodyWriter;
 import javax.ws.rs.ext.Provider;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.PrintWriter;
-import java.io.Writer;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 
 /**
  * JSON Provider to control marshalling of a managed resource.
@@ -73,59 +64,52 @@ public class JsonResourceProvider implements MessageBodyWriter<Resource>
    @Override
    public void writeTo(Resource resource, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType, MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException, WebApplicationException
    {
-      PrintWriter printWriter = new PrintWriter(entityStream);
+      JsonStreamWriter writer = new JsonStreamWriter(entityStream, false);
       try
       {
-         JSONWriter writer  =  new JSONWriter(printWriter);
-         writer.object().key("description").value(resource.getDescription());
-         writer.key("children").array();
+         writer.objectStart().key("description").value(resource.getDescription());
+         writer.key("children").arrayStart();
          for (Child child : resource.getChildren())
          {
             writeChild(child, writer);
          }
-         writer.endArray();
+         writer.arrayEnd();
          if (resource.getOperations() != null)
          {
-            writer.key("operations").array();
+            writer.key("operations").arrayStart();
             for (Operation operation : resource.getOperations())
             {
                writeOperation(operation, writer);
             }
-            writer.endArray();
+            writer.arrayEnd();
          }
-         writer.endObject();
-
-         printWriter.flush();
-      }
-      catch (JSONException e)
-      {
-         throw new IOException("Exception writing json result.", e);
+         writer.objectEnd();
       }
       finally
       {
-         printWriter.close();
+         writer.close();
       }
    }
 
-   private void writeOperation(Operation operation, JSONWriter writer) throws IOException, JSONException
+   private void writeOperation(Operation operation, JsonStreamWriter writer) throws IOException
    {
-      writer.object().key("operation-name").value(operation.getOperationName());
+      writer.objectStart().key("operation-name").value(operation.getOperationName());
       writer.key("operation-description").value(operation.getOperationDescription());
       writeLink("link", operation.getOperationLink(), writer);
-      writer.endObject();
+      writer.objectEnd();
    }
 
-   private void writeChild(Child child, JSONWriter writer) throws IOException, JSONException
+   private void writeChild(Child child, JsonStreamWriter writer) throws IOException
    {
-      writer.object().key("name").value(child.getName());
+      writer.objectStart().key("name").value(child.getName());
       writer.key("description").value(child.getDescription());
       writeLink("link", child.getLink(), writer);
-      writer.endObject();
+      writer.objectEnd();
    }
 
-   private void writeLink(String name, Link link, JSONWriter writer) throws IOException, JSONException
+   private void writeLink(String name, Link link, JsonStreamWriter writer) throws IOException
    {
-      writer.key(name).object();
+      writer.key(name).objectStart();
       if (link.getRel() != null)
       {
          writer.key("rel").value(link.getRel());
@@ -140,6 +124,6 @@ public class JsonResourceProvider implements MessageBodyWriter<Resource>
       {
          writer.key("method").value(link.getMethod());
       }
-      writer.endObject();
+      writer.objectEnd();
    }
 }
@@ -41,6 +41,7 @@ import javax.ws.rs.core.UriInfo;
 import javax.ws.rs.ext.MessageBodyWriter;
 import javax.ws.rs.ext.Provider;
 import javax.xml.stream.XMLStreamConstants;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.lang.annotation.Annotation;
@@ -72,19 +73,27 @@ public class ManagedResponseWriter implements MessageBodyWriter<ManagedResponse>
    @Override
    public void writeTo(ManagedResponse managedResponse, Class<?> aClass, Type type, Annotation[] annotations, MediaType mediaType, MultivaluedMap<String, Object> stringObjectMultivaluedMap, OutputStream outputStream) throws IOException, WebApplicationException
    {
-      String pretty = uriInfo.getQueryParameters().getFirst("pretty");
-      if (managedResponse.getResult() instanceof ModelValue)
+      try
       {
-         ModelValue value = (ModelValue) managedResponse.getResult();
-         resolveLinks(value, uriInfo);
+         String pretty = uriInfo.getQueryParameters().getFirst("pretty");
+         if (managedResponse.getResult() instanceof ModelValue)
+         {
+            ModelValue value = (ModelValue) managedResponse.getResult();
+            resolveLinks(value, uriInfo);
+         }
+         if ("false".equalsIgnoreCase(pretty))
+         {
+            managedResponse.writeResult(outputStream, false);
+         }
+         else
+         {
+            managedResponse.writeResult(outputStream, true);
+         }
       }
-      if ("false".equalsIgnoreCase(pretty))
+      finally
       {
-         managedResponse.writeResult(outputStream, false);
-      }
-      else
-      {
-         managedResponse.writeResult(outputStream, true);
+         // Releases the resources of the response even if it failed before it was written
+         if (managedResponse instanceof Closeable) ((Closeable) managedResponse).close();
       }
    }
 
@@ -97,7 +106,7 @@ public class ManagedResponseWriter implements MessageBodyWriter<ManagedResponse>
             ModelObject mo = value.asValue(ModelObject.class);
             for (String name : mo.getNames())
             {
-               resolveLinks(mo.get(name), uriInfo);
+               resolveLinks(mo.get(name, ModelValue.class), uriInfo);
             }
             break;
          case REFERENCE: